@@ -1,21 +1,14 @@
 package buzz.buzzy.my1;  // Change this to your package name
 
-import android.util.Log;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import androidx.annotation.Nullable;
 import com.banjerluke.capacitormeteorwebapp.CapacitorMeteorWebAppPlugin;
+import com.banjerluke.capacitormeteorwebapp.CorsProxy;
 import com.getcapacitor.BridgeActivity;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 /**
  * Example MainActivity that integrates the Capacitor Meteor WebApp plugin
  * to enable hot code push, asset serving, and CORS bypass for external requests.
@@ -38,6 +31,10 @@ public class MainActivity extends BridgeActivity {
 
     private static final String TAG = "MainActivity";
 
+    // Shared by all requests, so connections to your servers are pooled and reused.
+    // Use new CorsProxy.Builder().hostTimeouts(...) to give slow hosts longer timeouts.
+    private final CorsProxy corsProxy = CorsProxy.create();
+
     @Override
     public void onStart() {
         super.onStart();
@@ -51,8 +48,6 @@ public class MainActivity extends BridgeActivity {
                 @Override
                 @Nullable
                 public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
-                    String url = request.getUrl().toString();
-                    
                     // ============================================================================
                     // CORS BYPASS: Intercept external HTTP/HTTPS requests and add CORS headers
                     // ============================================================================
@@ -61,12 +56,8 @@ public class MainActivity extends BridgeActivity {
                     // cross-origin requests from capacitor:// scheme.
                     // This is necessary because Android WebView enforces CORS even for custom schemes.
                     // ============================================================================
-                    if (url.startsWith("http://") || url.startsWith("https://")) {
-                        // Check if this is an external request (not localhost)
-                        if (!url.contains("localhost") && !url.contains("127.0.0.1")) {
-                            Log.d(TAG, "[CORS Proxy] Intercepting external request: " + url);
-                            return proxyRequestWithCORS(url, request);
-                        }
+                    if (corsProxy.shouldProxy(request)) {
+                        return corsProxy.handleRequest(request);
                     }
                     
                     // Try the Meteor plugin for local assets
@@ -93,92 +84,6 @@ public class MainActivity extends BridgeActivity {
                     return null;
                 }
                 
-                /**
-                 * Proxy an external HTTP request and inject CORS headers to bypass CORS restrictions.
-                 * This is critical for making Meteor DDP connections work from capacitor:// origin.
-                 */
-                private WebResourceResponse proxyRequestWithCORS(String urlString, WebResourceRequest request) {
-                    try {
-                        URL url = new URL(urlString);
-                        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                        
-                        // Copy request headers
-                        Map<String, String> requestHeaders = request.getRequestHeaders();
-                        if (requestHeaders != null) {
-                            for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
-                                connection.setRequestProperty(entry.getKey(), entry.getValue());
-                            }
-                        }
-                        
-                        // Set request method
-                        connection.setRequestMethod(request.getMethod());
-                        connection.setConnectTimeout(10000);
-                        connection.setReadTimeout(10000);
-                        
-                        // Execute request
-                        connection.connect();
-                        
-                        int responseCode = connection.getResponseCode();
-                        String contentType = connection.getContentType();
-                        String encoding = connection.getContentEncoding();
-                        
-                        // Get response headers and inject CORS headers
-                        Map<String, String> responseHeaders = new HashMap<>();
-                        Map<String, List<String>> headerFields = connection.getHeaderFields();
-                        if (headerFields != null) {
-                            for (Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
-                                String key = entry.getKey();
-                                if (key != null && entry.getValue() != null && !entry.getValue().isEmpty()) {
-                                    responseHeaders.put(key, entry.getValue().get(0));
-                                }
-                            }
-                        }
-                        
-                        // ============================================================================
-                        // INJECT CORS HEADERS - Allow specific origin with credentials
-                        // ============================================================================
-                        // CRITICAL: When credentials are included, Access-Control-Allow-Origin CANNOT be '*'
-                        // It must be the specific origin making the request (capacitor://)
-                        // See: https://developer.mozilla.org/en-US/docs/Web/HTTP/CORS#credentialed_requests
-                        // ============================================================================
-                        String origin = request.getRequestHeaders().get("Origin");
-                        if (origin == null || origin.isEmpty()) {
-                            origin = "capacitor://localhost"; // Default to capacitor origin
-                        }
-                        responseHeaders.put("Access-Control-Allow-Origin", origin);
-                        responseHeaders.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS, PATCH");
-                        responseHeaders.put("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Requested-With, Accept, Origin");
-                        responseHeaders.put("Access-Control-Allow-Credentials", "true");
-                        responseHeaders.put("Access-Control-Max-Age", "86400");
-                        responseHeaders.put("Vary", "Origin"); // Important: indicate that response varies by origin
-                        // ============================================================================
-                        
-                        // Get response stream
-                        InputStream inputStream;
-                        if (responseCode >= 400) {
-                            inputStream = connection.getErrorStream();
-                        } else {
-                            inputStream = connection.getInputStream();
-                        }
-                        
-                        Log.d(TAG, "[CORS Proxy] ✅ Proxied request with CORS headers: " + urlString);
-                        
-                        // Return response with CORS headers
-                        return new WebResourceResponse(
-                            contentType != null ? contentType : "text/plain",
-                            encoding != null ? encoding : "UTF-8",
-                            responseCode,
-                            "OK",
-                            responseHeaders,
-                            inputStream
-                        );
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "[CORS Proxy] ❌ Failed to proxy request: " + urlString, e);
-                        return null;
-                    }
-                }
-
                 // Important: Forward other WebViewClient methods to the original client
                 @Override
                 public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
@@ -6,79 +6,152 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLDecoder;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 class AssetBundle {
     private static final String LOG_TAG = "MeteorWebApp";
 
-    static final Pattern runtimeConfigPattern = Pattern.compile("__meteor_runtime_config__ = JSON.parse\\(decodeURIComponent\\(\"([^\"]*)\"\\)\\)");
+    /** Precedes the URI-encoded runtime config in index.html, which ends with <code>"))</code> */
+    private static final byte[] RUNTIME_CONFIG_MARKER = "__meteor_runtime_config__ = JSON.parse(decodeURIComponent(\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] RUNTIME_CONFIG_MARKER_FALLBACK = fallbackTable(RUNTIME_CONFIG_MARKER);
 
+    /** Downloaded versions keep the runtime config values we need in this file, next to index.html */
+    static final String RUNTIME_CONFIG_FILE_NAME = "runtime-config.json";
+    private static final String[] PERSISTED_RUNTIME_CONFIG_KEYS = { "appId", "ROOT_URL", "autoupdateVersionCordova" };
+
+    /**
+     * Lightweight view of a row in the asset table. Views are created on demand
+     * and compare equal when they refer to the same row of the same bundle.
+     */
     final class Asset {
-        final String filePath;
-        final String urlPath;
-        final String fileType;
-        final boolean cacheable;
-        final String hash;
-        final String sourceMapUrlPath;
-
-        Asset(String filePath, String urlPath, String fileType, boolean cacheable, String hash, String sourceMapUrlPath) {
-            this.filePath = filePath;
-            this.urlPath = urlPath;
-            this.fileType = fileType;
-            this.cacheable = cacheable;
-            this.hash = hash;
-            this.sourceMapUrlPath = sourceMapUrlPath;
+        private final int index;
+
+        private Asset(int index) {
+            this.index = index;
+        }
+
+        /** The row of this asset in its bundle, for use with the row accessors */
+        int getRow() {
+            return index;
+        }
+
+        String getFilePath() {
+            return filePathAt(index);
+        }
+
+        String getUrlPath() {
+            return urlPathAt(index);
+        }
+
+        String getFileType() {
+            return fileTypeNames[fileTypes[index]];
+        }
+
+        boolean isCacheable() {
+            return isCacheableAt(index);
+        }
+
+        String getHash() {
+            return hashAt(index);
+        }
+
+        String getSourceMapUrlPath() {
+            return sourceMapUrlPaths != null ? sourceMapUrlPaths[index] : null;
+        }
+
+        /** The size in bytes according to the manifest, or -1 if unknown */
+        long getSize() {
+            return sizes[index];
+        }
+
+        AssetBundle getAssetBundle() {
+            return AssetBundle.this;
         }
 
         public Uri getFileUri() {
-            return Uri.withAppendedPath(AssetBundle.this.directoryUri, filePath);
+            return Uri.withAppendedPath(AssetBundle.this.directoryUri, getFilePath());
         }
 
         public File getFile() {
-            Uri fileUri = getFileUri();
-            if (resourceApi != null) {
-                return resourceApi.mapUriToFile(fileUri);
-            } else {
-                // For File-based bundles, we can directly convert the URI
-                if ("file".equals(fileUri.getScheme())) {
-                    return new File(fileUri.getPath());
-                }
-                return null;
-            }
+            return fileAt(index);
         }
 
+        /**
+         * The file an asset is staged in while downloading. It lives next to the
+         * final file, so moving it into place is an atomic rename.
+         */
         public File getTemporaryFile() throws IOException {
             File file = this.getFile();
-            return File.createTempFile(file.getName(), "tmp");
+            if (file == null) {
+                throw new IOException("Asset " + getUrlPath() + " has no file to download to");
+            }
+            return new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Asset)) return false;
+            Asset other = (Asset) object;
+            return index == other.index && getAssetBundle() == other.getAssetBundle();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(AssetBundle.this) + index;
         }
 
         @Override
         public String toString() {
-            return urlPath;
+            return getUrlPath();
         }
     }
 
     private final ResourceApi resourceApi;
     private Uri directoryUri;
+    /** The directory of a file-based bundle, or null for bundles served through the ResourceApi */
+    private File fileDirectory;
     private final AssetBundle parentAssetBundle;
 
     private final String version;
     private final String cordovaCompatibilityVersion;
 
-    private Map<String, Asset> ownAssetsByURLPath;
+    // The asset table, one row per own asset, sorted by url path. Rather than an
+    // object per asset with its own strings, every attribute is kept in a column.
+
+    /** Url paths, which double as the lookup index: the row of an asset is its index here */
+    private PathIndex urlPaths;
+    /** File paths, or null where the file path is the url path without its leading slash */
+    private String[] filePaths;
+    /** Index into fileTypeNames for every row */
+    private byte[] fileTypes;
+    private String[] fileTypeNames;
+    private BitSet cacheableRows;
+    /** SHA-1 hashes as 20 bytes per row, for the rows in hashRows */
+    private byte[] hashes;
+    private BitSet hashRows;
+    /** Hashes that are not 40 hex digits, or null if every hash is */
+    private String[] otherHashes;
+    /** Source map url paths, or null if no asset has one */
+    private String[] sourceMapUrlPaths;
+    private long[] sizes;
+
     private Asset indexFile;
 
     private JSONObject runtimeConfig;
+    private JSONObject persistedRuntimeConfig;
     private String appId;
     private String rootUrlString;
 
@@ -100,48 +173,379 @@ class AssetBundle {
 
         this.resourceApi = resourceApi;
         this.directoryUri = directoryUri;
+        this.fileDirectory = fileDirectoryForUri(directoryUri);
         this.parentAssetBundle = parentAssetBundle;
 
+        File directory = getDirectory();
         if (manifest == null) {
-            manifest = loadAssetManifest();
+            // Downloaded versions keep a binary index, so we only parse program.json once
+            if (directory != null) {
+                manifest = AssetIndex.read(directory);
+            }
+            if (manifest == null) {
+                manifest = loadAssetManifest();
+                writeAssetIndex(directory, manifest);
+            }
+        } else {
+            writeAssetIndex(directory, manifest);
         }
 
         version = manifest.version;
         cordovaCompatibilityVersion = manifest.cordovaCompatibilityVersion;
 
-        ownAssetsByURLPath = new HashMap<String, Asset>();
+        AssetTableBuilder builder = new AssetTableBuilder();
         for (AssetManifest.Entry entry : manifest.entries) {
             // Remove query parameters from url path
-            String urlPath = Uri.parse(entry.urlPath).getPath();
+            String urlPath = urlPathWithoutQuery(entry.urlPath);
 
             if (parentAssetBundle == null || parentAssetBundle.cachedAssetForUrlPath(urlPath, entry.hash) == null) {
-                Asset asset = new Asset(entry.filePath, urlPath, entry.fileType, entry.cacheable, entry.hash, entry.sourceMapUrlPath);
-                addAsset(asset);
+                builder.add(entry.filePath, urlPath, entry.fileType, entry.cacheable, entry.hash, entry.sourceMapUrlPath, entry.size);
             }
 
             if (entry.sourceMapFilePath != null && entry.sourceMapUrlPath != null) {
                 if (parentAssetBundle == null || parentAssetBundle.cachedAssetForUrlPath(entry.sourceMapUrlPath, null) == null) {
-                    Asset sourceMap = new Asset(entry.sourceMapFilePath, entry.sourceMapUrlPath, "json", true, null, null);
-                    addAsset(sourceMap);
+                    builder.add(entry.sourceMapFilePath, entry.sourceMapUrlPath, "json", true, null, null, -1);
+                }
+            }
+        }
+
+        builder.add("index.html", "/", "html", false, null, null, -1);
+        builder.build();
+
+        this.indexFile = new Asset(urlPaths.indexOf("/"));
+    }
+
+    /** Strips query and fragment from a url path, only paying for Uri.parse when there is something to strip or decode */
+    static String urlPathWithoutQuery(String urlPath) {
+        for (int i = 0; i < urlPath.length(); i++) {
+            char c = urlPath.charAt(i);
+            if (c == '?' || c == '#' || c == '%') {
+                return Uri.parse(urlPath).getPath();
+            }
+        }
+        return urlPath;
+    }
+
+    private static void writeAssetIndex(File directory, AssetManifest manifest) {
+        if (directory == null) return;
+
+        try {
+            AssetIndex.write(directory, manifest);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write asset index in " + directory, e);
+        }
+    }
+
+    private File fileDirectoryForUri(Uri directoryUri) {
+        if (!"file".equals(directoryUri.getScheme())) return null;
+
+        String path = directoryUri.getPath();
+        if (path == null || path.startsWith("/android_asset/")) return null;
+        return new File(path);
+    }
+
+    /**
+     * Collects the assets of a bundle row by row, and lays them out as columns
+     * sorted by url path. A later asset with the same url path replaces an earlier one.
+     */
+    private final class AssetTableBuilder {
+        private final List<String> filePaths = new ArrayList<String>();
+        private final List<String> urlPaths = new ArrayList<String>();
+        private final List<String> fileTypes = new ArrayList<String>();
+        private final BitSet cacheableRows = new BitSet();
+        private final List<String> hashes = new ArrayList<String>();
+        private final List<String> sourceMapUrlPaths = new ArrayList<String>();
+        private final List<Long> sizes = new ArrayList<Long>();
+
+        void add(String filePath, String urlPath, String fileType, boolean cacheable, String hash, String sourceMapUrlPath, long size) {
+            if (cacheable) {
+                cacheableRows.set(urlPaths.size());
+            }
+            filePaths.add(filePath);
+            urlPaths.add(urlPath);
+            fileTypes.add(fileType);
+            hashes.add(hash);
+            sourceMapUrlPaths.add(sourceMapUrlPath);
+            sizes.add(size);
+        }
+
+        void build() {
+            // PathIndex keeps the first of duplicate paths, so add the rows last to first
+            PathIndex.Builder indexBuilder = new PathIndex.Builder();
+            for (int row = urlPaths.size() - 1; row >= 0; row--) {
+                indexBuilder.add(urlPaths.get(row), row);
+            }
+            PathIndex index = indexBuilder.build();
+
+            int count = index.size();
+            String[] filePathColumn = new String[count];
+            byte[] fileTypeColumn = new byte[count];
+            List<String> fileTypeNameList = new ArrayList<String>();
+            BitSet cacheableColumn = new BitSet(count);
+            byte[] hashColumn = new byte[count * 20];
+            BitSet hashRowColumn = new BitSet(count);
+            String[] otherHashColumn = null;
+            String[] sourceMapUrlPathColumn = null;
+            long[] sizeColumn = new long[count];
+
+            for (int i = 0; i < count; i++) {
+                int row = (int) index.valueAt(i);
+                String urlPath = urlPaths.get(row);
+                String filePath = filePaths.get(row);
+                if (!(urlPath.startsWith("/") && filePath.regionMatches(0, urlPath, 1, urlPath.length() - 1) && filePath.length() == urlPath.length() - 1)) {
+                    filePathColumn[i] = filePath;
                 }
+
+                String fileType = fileTypes.get(row);
+                int fileTypeIndex = fileTypeNameList.indexOf(fileType);
+                if (fileTypeIndex < 0) {
+                    fileTypeIndex = fileTypeNameList.size();
+                    fileTypeNameList.add(fileType);
+                }
+                fileTypeColumn[i] = (byte) fileTypeIndex;
+
+                if (cacheableRows.get(row)) {
+                    cacheableColumn.set(i);
+                }
+
+                String hash = hashes.get(row);
+                if (hash != null) {
+                    if (!decodeHash(hash, hashColumn, i * 20)) {
+                        if (otherHashColumn == null) {
+                            otherHashColumn = new String[count];
+                        }
+                        otherHashColumn[i] = hash;
+                    }
+                    hashRowColumn.set(i);
+                }
+
+                String sourceMapUrlPath = sourceMapUrlPaths.get(row);
+                if (sourceMapUrlPath != null) {
+                    if (sourceMapUrlPathColumn == null) {
+                        sourceMapUrlPathColumn = new String[count];
+                    }
+                    sourceMapUrlPathColumn[i] = sourceMapUrlPath;
+                }
+
+                sizeColumn[i] = sizes.get(row);
+            }
+
+            if (fileTypeNameList.size() > 256) {
+                // Far more file types than any bundle has, but keep the byte column honest
+                throw new IllegalStateException("Too many file types in asset bundle");
+            }
+
+            AssetBundle.this.urlPaths = index;
+            AssetBundle.this.filePaths = filePathColumn;
+            AssetBundle.this.fileTypes = fileTypeColumn;
+            AssetBundle.this.fileTypeNames = fileTypeNameList.toArray(new String[0]);
+            AssetBundle.this.cacheableRows = cacheableColumn;
+            AssetBundle.this.hashes = hashColumn;
+            AssetBundle.this.hashRows = hashRowColumn;
+            AssetBundle.this.otherHashes = otherHashColumn;
+            AssetBundle.this.sourceMapUrlPaths = sourceMapUrlPathColumn;
+            AssetBundle.this.sizes = sizeColumn;
+        }
+    }
+
+    /** Decodes a 40 digit lowercase hex hash into 20 bytes, returning false if it is not one */
+    private static boolean decodeHash(String hash, byte[] target, int offset) {
+        if (hash.length() != 40) return false;
+        for (int i = 0; i < 20; i++) {
+            int high = Character.digit(hash.charAt(i * 2), 16);
+            int low = Character.digit(hash.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0 || Character.isUpperCase(hash.charAt(i * 2)) || Character.isUpperCase(hash.charAt(i * 2 + 1))) {
+                return false;
+            }
+            target[offset + i] = (byte) ((high << 4) | low);
+        }
+        return true;
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //region Asset table
+
+    // Row accessors for iterating over the own assets without creating views,
+    // e.g. for (int i = 0; i < bundle.getOwnAssetCount(); i++) { bundle.hashAt(i) ... }
+
+    int getOwnAssetCount() {
+        return urlPaths.size();
+    }
+
+    Asset assetAt(int index) {
+        return new Asset(index);
+    }
+
+    String urlPathAt(int index) {
+        return urlPaths.pathAt(index);
+    }
+
+    /** Compares the url path of the asset in a row with an ASCII path without decoding it */
+    boolean urlPathEqualsAt(int index, String asciiUrlPath) {
+        return urlPaths.pathEqualsAt(index, asciiUrlPath);
+    }
+
+    /** Appends the url path of the asset in a row, e.g. to build a key without intermediate Strings */
+    void appendUrlPathAt(int index, StringBuilder builder) {
+        urlPaths.appendPathAt(index, builder);
+    }
+
+    /** @return the url path of the asset in a row without its leading slash, decoded in one go */
+    String relativeUrlPathAt(int index) {
+        return urlPaths.pathAt(index, urlPaths.pathStartsWithAt(index, "/") ? 1 : 0);
+    }
+
+    String filePathAt(int index) {
+        String filePath = filePaths[index];
+        return filePath != null ? filePath : urlPaths.pathAt(index, 1);
+    }
+
+    /** Checks the end of the file path of the asset in a row against an ASCII suffix without decoding it */
+    boolean filePathEndsWithAt(int index, String asciiSuffix) {
+        String filePath = filePaths[index];
+        if (filePath != null) return filePath.endsWith(asciiSuffix);
+        // The file path is the url path without its leading slash
+        return urlPaths.pathLengthAt(index) > asciiSuffix.length() && urlPaths.pathEndsWithAt(index, asciiSuffix);
+    }
+
+    File fileAt(int index) {
+        // File-based bundles can skip building and parsing a Uri
+        File directory = fileDirectory;
+        if (directory != null) {
+            return new File(directory, filePathAt(index));
+        }
+
+        Uri fileUri = Uri.withAppendedPath(directoryUri, filePathAt(index));
+        if (resourceApi != null) {
+            return resourceApi.mapUriToFile(fileUri);
+        } else {
+            // For File-based bundles, we can directly convert the URI
+            if ("file".equals(fileUri.getScheme())) {
+                return new File(fileUri.getPath());
             }
+            return null;
         }
+    }
+
+    boolean isCacheableAt(int index) {
+        return cacheableRows.get(index);
+    }
+
+    boolean hasHashAt(int index) {
+        return hashRows.get(index);
+    }
+
+    /** @return the hash of the asset in a row, or null if it has none */
+    String hashAt(int index) {
+        if (!hashRows.get(index)) return null;
+        if (otherHashes != null && otherHashes[index] != null) return otherHashes[index];
+
+        char[] chars = new char[40];
+        for (int i = 0; i < 20; i++) {
+            int b = hashes[index * 20 + i] & 0xff;
+            chars[i * 2] = HEX_DIGITS[b >>> 4];
+            chars[i * 2 + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(chars);
+    }
 
-        Asset indexFile = new Asset("index.html", "/", "html", false, null, null);
-        addAsset(indexFile);
-        this.indexFile = indexFile;
+    /** Compares the hash of the asset in a row without decoding it to a String */
+    boolean hashEqualsAt(int index, String hash) {
+        if (hash == null || !hashRows.get(index)) return false;
+        if (otherHashes != null && otherHashes[index] != null) return otherHashes[index].equals(hash);
+        if (hash.length() != 40) return false;
+
+        for (int i = 0; i < 20; i++) {
+            int b = hashes[index * 20 + i] & 0xff;
+            if (hash.charAt(i * 2) != HEX_DIGITS[b >>> 4] || hash.charAt(i * 2 + 1) != HEX_DIGITS[b & 0xf]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Compares the hashes of rows in two bundles byte by byte, without decoding either */
+    boolean hashEqualsAt(int index, AssetBundle other, int otherIndex) {
+        if (!hashRows.get(index) || !other.hashRows.get(otherIndex)) return false;
+
+        String otherHash = other.otherHashes != null ? other.otherHashes[otherIndex] : null;
+        if (otherHash != null) return hashEqualsAt(index, otherHash);
+        if (otherHashes != null && otherHashes[index] != null) return false;
+
+        for (int i = 0; i < 20; i++) {
+            if (hashes[index * 20 + i] != other.hashes[otherIndex * 20 + i]) return false;
+        }
+        return true;
+    }
+
+    /** Appends the hash of the asset in a row as hex digits, which must exist */
+    void appendHashAt(int index, StringBuilder builder) {
+        if (otherHashes != null && otherHashes[index] != null) {
+            builder.append(otherHashes[index]);
+            return;
+        }
+        for (int i = 0; i < 20; i++) {
+            int b = hashes[index * 20 + i] & 0xff;
+            builder.append(HEX_DIGITS[b >>> 4]).append(HEX_DIGITS[b & 0xf]);
+        }
     }
 
-    protected void addAsset(Asset asset) {
-        ownAssetsByURLPath.put(asset.urlPath, asset);
+    /** @return the row of the own asset at the url path of a row in another bundle, or -1 if this bundle has none */
+    int indexOfOwnAsset(AssetBundle other, int otherIndex) {
+        return urlPaths.indexOf(other.urlPaths, otherIndex);
     }
 
+    /**
+     * @return true if this bundle or one of its parents has an asset at the url
+     * path of a row in another bundle, like {@link #assetForUrlPath} but without
+     * decoding the path
+     */
+    boolean hasAssetForUrlPathAt(AssetBundle other, int otherIndex) {
+        for (AssetBundle bundle = this; bundle != null; bundle = bundle.parentAssetBundle) {
+            if (bundle.indexOfOwnAsset(other, otherIndex) >= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #cachedAssetForUrlPath}, for the url path of a row in another
+     * bundle, and its hash if matchHash is true or else no hash
+     */
+    Asset cachedAssetForRow(AssetBundle other, int otherIndex, boolean matchHash) {
+        int index = indexOfOwnAsset(other, otherIndex);
+        if (index < 0) return null;
+
+        if (matchHash ? hashEqualsAt(index, other, otherIndex) : isCacheableAt(index)) {
+            return new Asset(index);
+        }
+        return null;
+    }
+
+    //endregion
+
+    /** Creates a view for every own asset. Prefer the row accessors when iterating large bundles. */
     public Set<Asset> getOwnAssets() {
-        return new HashSet<Asset>(ownAssetsByURLPath.values());
+        Set<Asset> assets = new HashSet<Asset>(getOwnAssetCount() * 2);
+        for (int i = 0; i < getOwnAssetCount(); i++) {
+            assets.add(new Asset(i));
+        }
+        return assets;
+    }
+
+    /** @return the row of the own asset at the url path, or -1 if this bundle has none */
+    int indexOfOwnAsset(String urlPath) {
+        return urlPaths.indexOf(urlPath);
+    }
+
+    /** @return true if this bundle has an own asset at the url path */
+    boolean hasOwnAssetForUrlPath(String urlPath) {
+        return indexOfOwnAsset(urlPath) >= 0;
     }
 
     public Asset assetForUrlPath(String urlPath) {
-        Asset asset = ownAssetsByURLPath.get(urlPath);
+        int index = urlPaths.indexOf(urlPath);
+        Asset asset = index >= 0 ? new Asset(index) : null;
         if (asset == null && parentAssetBundle != null) {
             Log.d(LOG_TAG, "Asset " + urlPath + " not found in bundle " + version + ":" + directoryUri.toString() + ", serving from parent bundle");
             asset = parentAssetBundle.assetForUrlPath(urlPath);
@@ -154,13 +558,13 @@ class AssetBundle {
     }
 
     public Asset cachedAssetForUrlPath(String urlPath, String hash) {
-        Asset asset = ownAssetsByURLPath.get(urlPath);
+        int index = urlPaths.indexOf(urlPath);
 
-        if (asset == null) return null;
+        if (index < 0) return null;
 
         // If the asset is not cacheable, we require a matching hash
-        if ((asset.cacheable && hash == null) || (asset.hash != null && asset.hash.equals(hash))) {
-            return asset;
+        if ((isCacheableAt(index) && hash == null) || hashEqualsAt(index, hash)) {
+            return new Asset(index);
         }
 
         return null;
@@ -192,13 +596,78 @@ class AssetBundle {
     public JSONObject getRuntimeConfig() {
         if (runtimeConfig == null) {
             runtimeConfig = loadRuntimeConfig(getIndexFile().getFileUri());
+            if (runtimeConfig != null && persistedRuntimeConfig == null) {
+                persistedRuntimeConfig = persistRuntimeConfig(runtimeConfig);
+            }
         }
         return runtimeConfig;
     }
 
+    /**
+     * The runtime config values we need after download, read from
+     * runtime-config.json if there is one so index.html does not have to be scanned again
+     */
+    private JSONObject getPersistedRuntimeConfig() {
+        if (persistedRuntimeConfig == null) {
+            File file = runtimeConfigFile();
+            if (file != null && file.exists()) {
+                InputStream inputStream = null;
+                try {
+                    inputStream = new FileInputStream(file);
+                    persistedRuntimeConfig = new JSONObject(IOUtils.stringFromInputStream(inputStream));
+                } catch (IOException | JSONException e) {
+                    Log.w(LOG_TAG, "Could not read " + file + ", scanning index file instead", e);
+                } finally {
+                    if (inputStream != null) {
+                        try {
+                            inputStream.close();
+                        } catch (IOException e) {
+                        }
+                    }
+                }
+            }
+            if (persistedRuntimeConfig == null) {
+                // Loading the runtime config persists the values we need
+                getRuntimeConfig();
+            }
+        }
+        return persistedRuntimeConfig;
+    }
+
+    /** Keeps the values we need from a runtime config, writing them to runtime-config.json for file-based bundles */
+    private JSONObject persistRuntimeConfig(JSONObject runtimeConfig) {
+        JSONObject values = new JSONObject();
+        try {
+            for (String key : PERSISTED_RUNTIME_CONFIG_KEYS) {
+                Object value = runtimeConfig.opt(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Could not copy runtime config values", e);
+            return null;
+        }
+
+        File file = runtimeConfigFile();
+        if (file != null) {
+            try {
+                IOUtils.writeToFile(values.toString().getBytes(StandardCharsets.UTF_8), file);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not write " + file, e);
+            }
+        }
+        return values;
+    }
+
+    private File runtimeConfigFile() {
+        File directory = fileDirectory;
+        return directory != null ? new File(directory, RUNTIME_CONFIG_FILE_NAME) : null;
+    }
+
     public String getAppId() {
         if (appId == null) {
-            JSONObject runtimeConfig = getRuntimeConfig();
+            JSONObject runtimeConfig = getPersistedRuntimeConfig();
             if (runtimeConfig != null) {
                 try {
                     appId = runtimeConfig.getString("appId");
@@ -212,7 +681,7 @@ class AssetBundle {
 
     public String getRootUrlString() {
         if (rootUrlString == null) {
-            JSONObject runtimeConfig = getRuntimeConfig();
+            JSONObject runtimeConfig = getPersistedRuntimeConfig();
             if (runtimeConfig != null) {
                 try {
                     rootUrlString = runtimeConfig.getString("ROOT_URL");
@@ -226,59 +695,52 @@ class AssetBundle {
 
     void didMoveToDirectoryAtUri(Uri directoryUri) {
         this.directoryUri = directoryUri;
+        this.fileDirectory = fileDirectoryForUri(directoryUri);
     }
 
     void didMoveToDirectory(File directory) {
         this.directoryUri = Uri.fromFile(directory);
+        this.fileDirectory = fileDirectoryForUri(directoryUri);
     }
 
     private AssetManifest loadAssetManifest() throws WebAppException {
         Uri manifestUri = Uri.withAppendedPath(directoryUri, "program.json");
+        InputStream inputStream = null;
         try {
-            String string = stringFromUri(manifestUri);
-            return new AssetManifest(string);
+            inputStream = openInputStream(manifestUri);
+            return AssetManifest.fromInputStream(new BufferedInputStream(inputStream));
         } catch (IOException e) {
             throw new WebAppException("Error loading asset manifest", e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                }
+            }
         }
     }
 
     JSONObject loadRuntimeConfig(Uri uri) {
+        InputStream inputStream = null;
         try {
-            String string = stringFromUri(uri);
-            Matcher matcher = runtimeConfigPattern.matcher(string);
-            if (!matcher.find()) {
+            inputStream = new BufferedInputStream(openInputStream(uri));
+            String encodedRuntimeConfig = scanForRuntimeConfig(inputStream);
+            if (encodedRuntimeConfig == null) {
                 Log.e(LOG_TAG, "Could not find runtime config in index file");
                 return null;
             }
-            String runtimeConfigString = URLDecoder.decode(matcher.group(1), "UTF-8");
+            String runtimeConfigString = URLDecoder.decode(encodedRuntimeConfig, "UTF-8");
             return new JSONObject(runtimeConfigString);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error loading index file", e);
             return null;
-        } catch (IllegalStateException e) {
-            Log.e(LOG_TAG, "Could not find runtime config in index file", e);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Could not decode runtime config in index file", e);
             return null;
         } catch (JSONException e) {
             Log.e(LOG_TAG, "Error parsing runtime config", e);
             return null;
-        }
-    }
-
-    private String stringFromUri(Uri uri) throws IOException {
-        InputStream inputStream = null;
-        try {
-            if (resourceApi != null) {
-                inputStream = resourceApi.openForRead(uri, true).inputStream;
-            } else {
-                // For File-based bundles, open directly
-                if ("file".equals(uri.getScheme())) {
-                    File file = new File(uri.getPath());
-                    inputStream = new java.io.FileInputStream(file);
-                } else {
-                    throw new IOException("Cannot open non-file URI without resourceApi: " + uri);
-                }
-            }
-            return IOUtils.stringFromInputStream(inputStream);
         } finally {
             if (inputStream != null) {
                 try {
@@ -288,4 +750,72 @@ class AssetBundle {
             }
         }
     }
+
+    /**
+     * Scans index.html for the runtime config, without reading it into memory
+     * and without reading any further than the end of the runtime config.
+     * @return the URI-encoded runtime config, or null if it was not found
+     */
+    static String scanForRuntimeConfig(InputStream inputStream) throws IOException {
+        // Knuth-Morris-Pratt, so a partial match never makes us miss the marker
+        int matched = 0;
+        int b;
+        while (matched < RUNTIME_CONFIG_MARKER.length) {
+            b = inputStream.read();
+            if (b == -1) return null;
+
+            while (matched > 0 && b != RUNTIME_CONFIG_MARKER[matched]) {
+                matched = RUNTIME_CONFIG_MARKER_FALLBACK[matched - 1];
+            }
+            if (b == RUNTIME_CONFIG_MARKER[matched]) {
+                matched++;
+            }
+        }
+
+        // The runtime config is URI-encoded, so it is ASCII and cannot contain a quote
+        StringBuilder builder = new StringBuilder(4096);
+        while ((b = inputStream.read()) != '"') {
+            if (b == -1) return null;
+            builder.append((char) b);
+        }
+
+        if (inputStream.read() != ')' || inputStream.read() != ')') return null;
+
+        return builder.toString();
+    }
+
+    /** The longest proper prefix of the pattern that is also a suffix, for every prefix length */
+    private static int[] fallbackTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+        int length = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (length > 0 && pattern[i] != pattern[length]) {
+                length = table[length - 1];
+            }
+            if (pattern[i] == pattern[length]) {
+                length++;
+            }
+            table[i] = length;
+        }
+        return table;
+    }
+
+    private InputStream openInputStream(Uri uri) throws IOException {
+        InputStream inputStream;
+        if (resourceApi != null) {
+            inputStream = resourceApi.openForRead(uri, true).inputStream;
+        } else {
+            // For File-based bundles, open directly
+            if ("file".equals(uri.getScheme())) {
+                File file = new File(uri.getPath());
+                inputStream = new java.io.FileInputStream(file);
+            } else {
+                throw new IOException("Cannot open non-file URI without resourceApi: " + uri);
+            }
+        }
+        if (inputStream == null) {
+            throw new java.io.FileNotFoundException("Could not open " + uri);
+        }
+        return inputStream;
+    }
 }
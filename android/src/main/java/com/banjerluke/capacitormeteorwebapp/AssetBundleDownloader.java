@@ -8,9 +8,12 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,6 +22,9 @@ import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
 
 class AssetBundleDownloader {
     private static final String LOG_TAG = "MeteorWebApp";
@@ -26,37 +32,69 @@ class AssetBundleDownloader {
     static final Pattern eTagWithSha1HashPattern = Pattern.compile("\"([0-9a-f]{40})\"");
 
     public interface Callback {
+        public void onProgress(DownloadProgress progress);
         public void onFinished();
         public void onFailure(Throwable cause);
     }
 
+    /** How downloaded files are made durable before a bundle is considered complete */
+    enum Durability {
+        /** Leave flushing to the OS */
+        NONE,
+        /** Sync every file and its directory as soon as it has been downloaded */
+        PER_FILE,
+        /** Sync every file and directory of the bundle once, before it is moved into place */
+        PER_BUNDLE;
+
+        static Durability fromString(String string) {
+            if ("none".equals(string)) return NONE;
+            if ("file".equals(string)) return PER_FILE;
+            return PER_BUNDLE;
+        }
+    }
+
     private Callback callback;
 
     private final WebAppConfiguration webAppConfiguration;
     private final AssetBundle assetBundle;
     private final HttpUrl baseUrl;
+    private final Durability durability;
+    private final DownloadProgress progress;
 
     private final OkHttpClient httpClient;
     private final Set<AssetBundle.Asset> missingAssets;
     private final Set<AssetBundle.Asset> assetsDownloading;
+    private final Queue<File> downloadedFiles;
     private boolean canceled;
 
-    public AssetBundleDownloader(WebAppConfiguration webAppConfiguration, AssetBundle assetBundle, HttpUrl baseUrl, Set<AssetBundle.Asset> missingAssets) {
+    public AssetBundleDownloader(WebAppConfiguration webAppConfiguration, AssetBundle assetBundle, HttpUrl baseUrl, Set<AssetBundle.Asset> missingAssets, Durability durability, DownloadProgress progress) {
         this.webAppConfiguration = webAppConfiguration;
         this.assetBundle = assetBundle;
         this.baseUrl = baseUrl;
+        this.durability = durability;
+        this.progress = progress;
 
         httpClient = new OkHttpClient.Builder().cache(null).build();
         httpClient.dispatcher().setMaxRequestsPerHost(6);
 
         this.missingAssets = Collections.synchronizedSet(missingAssets);
         assetsDownloading = Collections.synchronizedSet(new HashSet<AssetBundle.Asset>());
+        downloadedFiles = new ConcurrentLinkedQueue<File>();
     }
 
     public AssetBundle getAssetBundle() {
         return assetBundle;
     }
 
+    public DownloadProgress getProgress() {
+        return progress;
+    }
+
+    /** @return the files downloaded so far, which have only been synced if durability is PER_FILE */
+    public Collection<File> getDownloadedFiles() {
+        return downloadedFiles;
+    }
+
     public void setCallback(Callback callback) {
         this.callback = callback;
     }
@@ -94,10 +132,22 @@ class AssetBundleDownloader {
                         }
 
                         try {
-                            File file = IOUtils.writeToFile(response.body().source(), asset.getTemporaryFile());
-                            if (!file.renameTo(asset.getFile())) {
+                            // Stage the download next to its destination, so the rename is atomic
+                            File temporaryFile = asset.getTemporaryFile();
+                            File file = asset.getFile();
+                            boolean syncFile = durability == Durability.PER_FILE;
+                            long contentLength = response.body().contentLength();
+                            if (asset.getSize() <= 0 && contentLength > 0) {
+                                progress.addExpectedBytes(contentLength);
+                            }
+                            IOUtils.writeToFile(countingSource(response.body().source()), temporaryFile, contentLength, syncFile);
+                            if (!temporaryFile.renameTo(file)) {
                                 throw new IOException("Failed to rename a temporary download file.");
                             }
+                            if (syncFile) {
+                                IOUtils.syncDirectory(file.getParentFile());
+                            }
+                            downloadedFiles.add(file);
                         } catch (Exception e) {
                             didFail(e);
                             return;
@@ -106,7 +156,7 @@ class AssetBundleDownloader {
                         // We don't have a hash for the index page, so we have to parse the runtime config
                         // and compare autoupdateVersionCordova to the version in the manifest to verify
                         // if we downloaded the expected version
-                        if (asset.filePath.equals("index.html")) {
+                        if (asset.getFilePath().equals("index.html")) {
                             JSONObject runtimeConfig = assetBundle.getRuntimeConfig();
                             if (runtimeConfig != null) {
                                 try {
@@ -118,14 +168,21 @@ class AssetBundleDownloader {
                             }
                         }
 
-                        missingAssets.remove(asset);
+                        boolean finished;
+                        synchronized (missingAssets) {
+                            finished = missingAssets.remove(asset) && missingAssets.isEmpty();
+                        }
+
+                        progress.addAssetDone();
 
-                        if (missingAssets.isEmpty()) {
+                        if (finished) {
                             Log.d(LOG_TAG, "Finished downloading new asset bundle version: " + assetBundle.getVersion());
 
                             if (callback != null) {
                                 callback.onFinished();
                             }
+                        } else {
+                            reportProgressIfNeeded();
                         }
                     }
                 });
@@ -133,8 +190,29 @@ class AssetBundleDownloader {
         }
     }
 
+    /** Wraps a response body to account for downloaded bytes as they arrive */
+    private Source countingSource(Source source) {
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long bytesRead = super.read(sink, byteCount);
+                if (bytesRead > 0) {
+                    progress.addBytesDone(bytesRead);
+                    reportProgressIfNeeded();
+                }
+                return bytesRead;
+            }
+        };
+    }
+
+    private void reportProgressIfNeeded() {
+        if (progress.sample() && callback != null && !canceled) {
+            callback.onProgress(progress);
+        }
+    }
+
     protected HttpUrl downloadUrlForAsset(AssetBundle.Asset asset) {
-        String urlPath = asset.urlPath;
+        String urlPath = asset.getUrlPath();
 
         // Remove leading / from URL path because the path should be
         // interpreted relative to the base URL
@@ -147,7 +225,7 @@ class AssetBundleDownloader {
         // To avoid inadvertently downloading the default index page when an asset
         // is not found, we add meteor_dont_serve_index=true to the URL unless we
         // are actually downloading the index page.
-        if (!asset.filePath.equals("index.html")) {
+        if (!asset.getFilePath().equals("index.html")) {
             builder.addQueryParameter("meteor_dont_serve_index", "true");
         }
 
@@ -161,7 +239,7 @@ class AssetBundleDownloader {
 
         // If we have a hash for the asset, and the ETag header also specifies
         // a hash, we compare these to verify if we received the expected asset version
-        String expectedHash = asset.hash;
+        String expectedHash = asset.getHash();
         if (expectedHash != null) {
             String eTag = response.header("etag");
 
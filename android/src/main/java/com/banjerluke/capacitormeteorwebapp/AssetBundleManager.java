@@ -2,13 +2,18 @@ package com.banjerluke.capacitormeteorwebapp;
 
 import android.util.Log;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import okhttp3.Call;
 import okhttp3.HttpUrl;
@@ -20,8 +25,9 @@ class AssetBundleManager {
     private static final String LOG_TAG = "MeteorWebApp";
 
     public interface Callback {
-        public boolean shouldDownloadBundleForManifest(AssetManifest manifest);
+        public boolean shouldDownloadBundleForVersion(String version);
         public void onFinishedDownloadingAssetBundle(AssetBundle assetBundle);
+        public void onDownloadProgress(DownloadProgress progress);
         public void onError(Throwable cause);
     }
 
@@ -33,7 +39,15 @@ class AssetBundleManager {
 
     /** The directory used to store downloaded asset bundles */
     private final File versionsDirectory;
+
+    /** Directories of downloaded asset bundles by version, listed at startup without loading them */
+    private final Map<String, File> downloadedVersionDirectoriesByVersion;
+    /** Downloaded asset bundles that have been loaded, see {@link #loadDownloadedAssetBundle} */
     private final Map<String, AssetBundle> downloadedAssetBundlesByVersion;
+    private boolean allDownloadedAssetBundlesLoaded;
+
+    /** Index of the cacheable assets in downloaded asset bundles, see {@link #cacheKey} */
+    private final Map<String, AssetBundle.Asset> cachedAssetsByKey;
 
     /** The directory used while downloading a new asset bundle */
     private final File downloadDirectory;
@@ -41,42 +55,104 @@ class AssetBundleManager {
     private final File partialDownloadDirectory;
     private AssetBundle partiallyDownloadedAssetBundle;
 
+    /** Content-addressed store holding a single copy of every downloaded asset */
+    private final AssetStore assetStore;
+
+    /** Removed directories are moved here, so removing them does not hold up callers */
+    private final Trash trash;
+
     private AssetBundleDownloader assetBundleDownloader;
 
+    /** Progress of the current or most recent download */
+    private volatile DownloadProgress downloadProgress;
+    private AssetBundleDownloader.Durability durability = AssetBundleDownloader.Durability.PER_BUNDLE;
+
     /** The initial asset bundle included in the app bundle */
     public final AssetBundle initialAssetBundle;
 
-    public AssetBundleManager(WebAppConfiguration webAppConfiguration, AssetBundle initialAssetBundle, File versionsDirectory) throws WebAppException {
+    public AssetBundleManager(WebAppConfiguration webAppConfiguration, AssetBundle initialAssetBundle, File versionsDirectory, Trash trash) throws WebAppException {
         this.webAppConfiguration = webAppConfiguration;
         this.initialAssetBundle = initialAssetBundle;
         this.versionsDirectory = versionsDirectory;
+        this.trash = trash;
         downloadDirectory = new File(versionsDirectory, "Downloading");
         partialDownloadDirectory = new File(versionsDirectory, "PartialDownload");
+        assetStore = new AssetStore(new File(versionsDirectory, "Store"));
 
+        downloadedVersionDirectoriesByVersion = new HashMap<String, File>();
         downloadedAssetBundlesByVersion = new HashMap<String, AssetBundle>();
-        loadDownloadedAssetBundles();
+        cachedAssetsByKey = new ConcurrentHashMap<String, AssetBundle.Asset>();
+        listDownloadedVersionDirectories();
 
         httpClient = new OkHttpClient();
     }
 
-    private void loadDownloadedAssetBundles() throws WebAppException {
-        for (File file: versionsDirectory.listFiles()) {
+    /**
+     * Version directories are named after their version, so startup only lists
+     * them. Bundles are loaded when they are served or consulted for reuse.
+     */
+    private void listDownloadedVersionDirectories() {
+        File[] files = versionsDirectory.listFiles();
+        if (files == null) return;
+
+        for (File file: files) {
             if (downloadDirectory.equals(file)) continue;
             if (partialDownloadDirectory.equals(file)) continue;
+            if (assetStore.getDirectory().equals(file)) continue;
 
             if (file.isDirectory()) {
-                AssetBundle assetBundle = new AssetBundle(file, null, initialAssetBundle);
-                downloadedAssetBundlesByVersion.put(assetBundle.getVersion(), assetBundle);
+                downloadedVersionDirectoriesByVersion.put(file.getName(), file);
             }
         }
     }
 
+    /** @return the loaded bundle, or null if there is no such version or it could not be loaded */
+    synchronized private AssetBundle loadDownloadedAssetBundle(String version) {
+        AssetBundle assetBundle = downloadedAssetBundlesByVersion.get(version);
+        if (assetBundle != null) return assetBundle;
+
+        File versionDirectory = downloadedVersionDirectoriesByVersion.get(version);
+        if (versionDirectory == null) return null;
+
+        try {
+            assetBundle = new AssetBundle(versionDirectory, null, initialAssetBundle);
+        } catch (WebAppException e) {
+            Log.w(LOG_TAG, "Could not load downloaded asset bundle in " + versionDirectory, e);
+            downloadedVersionDirectoriesByVersion.remove(version);
+            return null;
+        }
+
+        downloadedAssetBundlesByVersion.put(version, assetBundle);
+        indexCachedAssets(assetBundle);
+        assetStore.addAssetBundle(assetBundle);
+        return assetBundle;
+    }
+
+    /**
+     * Loads every downloaded bundle, so their assets can be reused. Once all
+     * bundles have retained their store entries, entries nobody references
+     * any more are removed.
+     */
+    synchronized private void loadAllDownloadedAssetBundles() {
+        if (allDownloadedAssetBundlesLoaded) return;
+
+        for (String version : new ArrayList<String>(downloadedVersionDirectoriesByVersion.keySet())) {
+            loadDownloadedAssetBundle(version);
+        }
+        assetStore.removeUnreferencedEntries();
+        allDownloadedAssetBundlesLoaded = true;
+    }
+
     public void setCallback(Callback callback) {
         this.callback = callback;
     }
 
+    public void setDurability(AssetBundleDownloader.Durability durability) {
+        this.durability = durability;
+    }
+
     synchronized public AssetBundle downloadedAssetBundleWithVersion(String version) {
-        return downloadedAssetBundlesByVersion.get(version);
+        return loadDownloadedAssetBundle(version);
     }
 
     public void checkForUpdates(final HttpUrl baseUrl) {
@@ -99,32 +175,45 @@ class AssetBundleManager {
                     return;
                 }
 
-                byte[] manifestBytes;
+                // Parse the manifest while it streams in, keeping a copy of the raw
+                // bytes to store as program.json if we end up downloading this version
+                File manifestFile = null;
                 AssetManifest manifest;
+                InputStream inputStream = null;
                 try {
-                    manifestBytes = response.body().bytes();
-                    manifest = new AssetManifest(new String(manifestBytes));
-                } catch (WebAppException e) {
-                    didFail(e);
-                    return;
-                } catch (IOException e) {
+                    manifestFile = File.createTempFile(".manifest", ".json", versionsDirectory);
+                    inputStream = IOUtils.teeInputStream(response.body().byteStream(), new BufferedOutputStream(new FileOutputStream(manifestFile)));
+                    manifest = AssetManifest.fromInputStream(inputStream, new AssetManifest.VersionFilter() {
+                        @Override
+                        public boolean shouldReadEntries(String version) {
+                            return shouldDownloadVersion(version);
+                        }
+                    });
+                    if (manifest != null) {
+                        IOUtils.drain(inputStream);
+                    }
+                } catch (WebAppException | IOException e) {
+                    if (manifestFile != null) {
+                        manifestFile.delete();
+                    }
                     didFail(e);
                     return;
+                } finally {
+                    if (inputStream != null) {
+                        try {
+                            inputStream.close();
+                        } catch (IOException e) {
+                        }
+                    }
+                    response.close();
                 }
 
-                final String version = manifest.version;
-
-                Log.d(LOG_TAG, "Downloaded asset manifest for version: " + version);
-
-                if (assetBundleDownloader != null && assetBundleDownloader.getAssetBundle().getVersion().equals(version)) {
-                    Log.w(LOG_TAG, "Already downloading asset bundle version: " + version);
+                if (manifest == null) {
+                    manifestFile.delete();
                     return;
                 }
 
-                // Give the callback a chance to decide whether the version should be downloaded
-                if (callback != null && !callback.shouldDownloadBundleForManifest(manifest)) {
-                    return;
-                }
+                final String version = manifest.version;
 
                 // Cancel in progress download if there is one
                 if (assetBundleDownloader != null) {
@@ -134,6 +223,7 @@ class AssetBundleManager {
 
                 // There is no need to redownload the initial version
                 if (initialAssetBundle.getVersion().equals(version)) {
+                    manifestFile.delete();
                     didFinishDownloadingAssetBundle(initialAssetBundle);
                     return;
                 }
@@ -142,6 +232,7 @@ class AssetBundleManager {
                 // version, use that
                 AssetBundle downloadedAssetBundle = downloadedAssetBundleWithVersion(version);
                 if (downloadedAssetBundle != null) {
+                    manifestFile.delete();
                     didFinishDownloadingAssetBundle(downloadedAssetBundle);
                     return;
                 }
@@ -151,16 +242,15 @@ class AssetBundleManager {
 
                 // Create download directory
                 if (!downloadDirectory.mkdir()) {
+                    manifestFile.delete();
                     didFail(new IOException("Could not create download directory"));
                     return;
                 }
 
-                // Copy downloaded asset manifest to file
-                File manifestFile = new File(downloadDirectory, "program.json");
-                try {
-                    IOUtils.writeToFile(manifestBytes, manifestFile);
-                } catch (IOException e) {
-                    didFail(e);
+                // Move downloaded asset manifest into the download directory
+                if (!manifestFile.renameTo(new File(downloadDirectory, "program.json"))) {
+                    manifestFile.delete();
+                    didFail(new IOException("Could not move asset manifest into download directory"));
                     return;
                 }
 
@@ -176,6 +266,23 @@ class AssetBundleManager {
         });
     }
 
+    /** Decides whether the version of a manifest that is being parsed should be downloaded */
+    private boolean shouldDownloadVersion(String version) {
+        Log.d(LOG_TAG, "Downloaded asset manifest for version: " + version);
+
+        if (assetBundleDownloader != null && assetBundleDownloader.getAssetBundle().getVersion().equals(version)) {
+            Log.w(LOG_TAG, "Already downloading asset bundle version: " + version);
+            return false;
+        }
+
+        // Give the callback a chance to decide whether the version should be downloaded
+        if (callback != null && !callback.shouldDownloadBundleForVersion(version)) {
+            return false;
+        }
+
+        return true;
+    }
+
     /** If there is an existing Downloading directory, move it
      * to PartialDownload and load the partiallyDownloadedAssetBundle so we
      * don't unnecessarily redownload assets
@@ -183,7 +290,7 @@ class AssetBundleManager {
     private void moveExistingDownloadDirectoryIfNeeded() {
         if (downloadDirectory.exists()) {
             if (partialDownloadDirectory.exists()) {
-                if (!IOUtils.deleteRecursively(partialDownloadDirectory)) {
+                if (!trash.moveToTrash(partialDownloadDirectory)) {
                     Log.w(LOG_TAG, "Could not delete partial download directory");
                 }
             }
@@ -207,45 +314,117 @@ class AssetBundleManager {
         return assetBundleDownloader != null;
     }
 
+    /** @return the progress of the current or most recent download, or null if there was none */
+    public DownloadProgress getDownloadProgress() {
+        return downloadProgress;
+    }
+
     synchronized protected void downloadAssetBundle(final AssetBundle assetBundle, HttpUrl baseUrl) {
+        loadAllDownloadedAssetBundles();
+
         Set<AssetBundle.Asset> missingAssets = new HashSet<AssetBundle.Asset>();
+        final DownloadProgress progress = new DownloadProgress(assetBundle.getVersion());
+        downloadProgress = progress;
+        Set<File> containingDirectories = new HashSet<File>();
+        final Set<File> linkedFiles = new HashSet<File>();
+        List<IOExecutor.Task> linkTasks = new ArrayList<IOExecutor.Task>();
+        StringBuilder keyBuilder = new StringBuilder();
+
+        // Go by row, so only assets that have to be downloaded get a view
+        for (int i = 0; i < assetBundle.getOwnAssetCount(); i++) {
+            final File file = assetBundle.fileAt(i);
 
-        for (AssetBundle.Asset asset : assetBundle.getOwnAssets()) {
             // Create containing directories for the asset if necessary
-            File containingDirectory = asset.getFile().getParentFile();
-            if (!containingDirectory.exists()) {
+            File containingDirectory = file.getParentFile();
+            if (containingDirectories.add(containingDirectory) && !containingDirectory.exists()) {
                 if (!containingDirectory.mkdirs()) {
                     didFail(new IOException("Could not create containing directory: " + containingDirectory));
                     return;
                 }
             }
 
-            // If we find a cached asset, we copy it
-            AssetBundle.Asset cachedAsset = cachedAssetForAsset(asset);
-            if (cachedAsset != null) {
-                try {
-                    copyFile(cachedAsset.getFile(), asset.getFile());
-                } catch (IOException e) {
-                    didFail(e);
-                    return;
+            // If the asset store has the asset or we find a cached asset, we link it
+            // (or copy it if linking is not possible)
+            File cachedFile = assetBundle.hasHashAt(i) ? assetStore.storedFileForHash(assetBundle.hashAt(i)) : null;
+            if (cachedFile == null) {
+                AssetBundle.Asset cachedAsset = cachedAssetForRow(assetBundle, i, keyBuilder);
+                if (cachedAsset != null) {
+                    cachedFile = cachedAsset.getFile();
                 }
+            }
+
+            if (cachedFile != null) {
+                final File source = cachedFile;
+                linkedFiles.add(file);
+                linkTasks.add(new IOExecutor.Task() {
+                    @Override
+                    public void run() throws IOException {
+                        IOUtils.linkOrCopyFile(source, file);
+                        progress.addReusedAsset(file.length());
+                    }
+                });
             } else {
+                AssetBundle.Asset asset = assetBundle.assetAt(i);
                 missingAssets.add(asset);
+                progress.addMissingAsset(asset.getSize());
+            }
+        }
+
+        try {
+            IOExecutor.runAll(linkTasks);
+        } catch (IOException e) {
+            didFail(e);
+            return;
+        }
+
+        final Set<File> createdDirectories = new HashSet<File>();
+        for (File containingDirectory : containingDirectories) {
+            for (File directory = containingDirectory; directory != null && !directory.equals(downloadDirectory.getParentFile()); directory = directory.getParentFile()) {
+                if (!createdDirectories.add(directory)) break;
             }
         }
 
         // If all assets were cached, there is no need to start a download
         if (missingAssets.isEmpty()) {
+            try {
+                syncDownloadedAssetBundle(linkedFiles, createdDirectories);
+            } catch (IOException e) {
+                didFail(e);
+                return;
+            }
+            moveDownloadedAssetBundleIntoPlace(assetBundle);
             didFinishDownloadingAssetBundle(assetBundle);
             return;
         }
 
-        assetBundleDownloader = new AssetBundleDownloader(webAppConfiguration, assetBundle, baseUrl, missingAssets);
+        if (callback != null) {
+            callback.onDownloadProgress(progress);
+        }
+
+        assetBundleDownloader = new AssetBundleDownloader(webAppConfiguration, assetBundle, baseUrl, missingAssets, durability, progress);
         assetBundleDownloader.setCallback(new AssetBundleDownloader.Callback() {
+            @Override
+            public void onProgress(DownloadProgress progress) {
+                if (callback != null) {
+                    callback.onDownloadProgress(progress);
+                }
+            }
+
             @Override
             public void onFinished() {
+                AssetBundleDownloader downloader = assetBundleDownloader;
                 assetBundleDownloader = null;
 
+                Set<File> files = new HashSet<File>(linkedFiles);
+                if (durability == AssetBundleDownloader.Durability.PER_BUNDLE && downloader != null) {
+                    files.addAll(downloader.getDownloadedFiles());
+                }
+                try {
+                    syncDownloadedAssetBundle(files, createdDirectories);
+                } catch (IOException e) {
+                    didFail(e);
+                    return;
+                }
                 moveDownloadedAssetBundleIntoPlace(assetBundle);
                 didFinishDownloadingAssetBundle(assetBundle);
             }
@@ -261,6 +440,14 @@ class AssetBundleManager {
     protected void didFinishDownloadingAssetBundle(AssetBundle assetBundle) {
         assetBundleDownloader = null;
 
+        DownloadProgress progress = downloadProgress;
+        if (progress != null && progress.getVersion().equals(assetBundle.getVersion()) && progress.getState() == DownloadProgress.State.DOWNLOADING) {
+            progress.setState(DownloadProgress.State.FINISHED);
+            if (callback != null) {
+                callback.onDownloadProgress(progress);
+            }
+        }
+
         if (callback != null) {
             callback.onFinishedDownloadingAssetBundle(assetBundle);
         }
@@ -269,21 +456,29 @@ class AssetBundleManager {
     protected void didFail(Throwable cause) {
         assetBundleDownloader = null;
 
+        DownloadProgress progress = downloadProgress;
+        if (progress != null && progress.getState() == DownloadProgress.State.DOWNLOADING) {
+            progress.setState(DownloadProgress.State.FAILED);
+            if (callback != null) {
+                callback.onDownloadProgress(progress);
+            }
+        }
+
         if (callback != null) {
             callback.onError(cause);
         }
     }
 
-    protected AssetBundle.Asset cachedAssetForAsset(AssetBundle.Asset asset) {
-        for (AssetBundle assetBundle : downloadedAssetBundlesByVersion.values()) {
-            AssetBundle.Asset cachedAsset = assetBundle.cachedAssetForUrlPath(asset.urlPath, asset.hash);
-            if (cachedAsset != null) {
-                return cachedAsset;
-            }
+    /** @return a cached asset for the url path and hash of a row, or null if there is none */
+    protected AssetBundle.Asset cachedAssetForRow(AssetBundle assetBundle, int index, StringBuilder keyBuilder) {
+        boolean hasHash = assetBundle.hasHashAt(index);
+        AssetBundle.Asset cachedAsset = cachedAssetsByKey.get(cacheKey(assetBundle, index, hasHash, keyBuilder));
+        if (cachedAsset != null) {
+            return cachedAsset;
         }
 
         if (partiallyDownloadedAssetBundle != null) {
-            AssetBundle.Asset cachedAsset = partiallyDownloadedAssetBundle.cachedAssetForUrlPath(asset.urlPath, asset.hash);
+            cachedAsset = partiallyDownloadedAssetBundle.cachedAssetForRow(assetBundle, index, hasHash);
             // Make sure the asset has been downloaded
             if (cachedAsset != null && cachedAsset.getFile().exists()) {
                 return cachedAsset;
@@ -293,41 +488,185 @@ class AssetBundleManager {
         return null;
     }
 
+    /**
+     * Key under which a cached asset is indexed. This mirrors
+     * {@link AssetBundle#cachedAssetForUrlPath}: an asset can be found by its
+     * hash, or by its URL path alone if it is cacheable. The key of a row is
+     * built straight from the asset table into a reused builder.
+     */
+    private static String cacheKey(AssetBundle assetBundle, int index, boolean withHash, StringBuilder builder) {
+        builder.setLength(0);
+        assetBundle.appendUrlPathAt(index, builder);
+        if (withHash) {
+            builder.append('\0');
+            assetBundle.appendHashAt(index, builder);
+        }
+        return builder.toString();
+    }
+
+    private void indexCachedAssets(AssetBundle assetBundle) {
+        StringBuilder keyBuilder = new StringBuilder();
+        for (int i = 0; i < assetBundle.getOwnAssetCount(); i++) {
+            boolean hasHash = assetBundle.hasHashAt(i);
+            boolean cacheable = assetBundle.isCacheableAt(i);
+            if (!hasHash && !cacheable) continue;
+
+            AssetBundle.Asset asset = assetBundle.assetAt(i);
+            if (hasHash) {
+                cachedAssetsByKey.putIfAbsent(cacheKey(assetBundle, i, true, keyBuilder), asset);
+            }
+            if (cacheable) {
+                cachedAssetsByKey.putIfAbsent(cacheKey(assetBundle, i, false, keyBuilder), asset);
+            }
+        }
+    }
+
+    /** Removes the assets of a bundle from the index, falling back to the remaining bundles */
+    private void unindexCachedAssets(AssetBundle assetBundle) {
+        StringBuilder keyBuilder = new StringBuilder();
+        for (int i = 0; i < assetBundle.getOwnAssetCount(); i++) {
+            boolean hasHash = assetBundle.hasHashAt(i);
+            boolean cacheable = assetBundle.isCacheableAt(i);
+            if (!hasHash && !cacheable) continue;
+
+            AssetBundle.Asset asset = assetBundle.assetAt(i);
+            if (hasHash) {
+                unindexCachedAsset(asset, cacheKey(assetBundle, i, true, keyBuilder), true);
+            }
+            if (cacheable) {
+                unindexCachedAsset(asset, cacheKey(assetBundle, i, false, keyBuilder), false);
+            }
+        }
+    }
+
+    private void unindexCachedAsset(AssetBundle.Asset asset, String key, boolean byHash) {
+        if (!cachedAssetsByKey.remove(key, asset)) return;
+
+        for (AssetBundle assetBundle : downloadedAssetBundlesByVersion.values()) {
+            AssetBundle.Asset cachedAsset = assetBundle.cachedAssetForRow(asset.getAssetBundle(), asset.getRow(), byHash);
+            if (cachedAsset != null) {
+                cachedAssetsByKey.putIfAbsent(key, cachedAsset);
+                return;
+            }
+        }
+    }
+
+    /**
+     * A single sync barrier for the download directory, so the bundle is only
+     * moved into place once everything in it is on disk: the given files, the
+     * manifest, and the entries of every directory that was created or written.
+     * Downloaded files have already been synced if durability is PER_FILE.
+     */
+    private void syncDownloadedAssetBundle(Set<File> files, Set<File> directories) throws IOException {
+        if (durability == AssetBundleDownloader.Durability.NONE) return;
+
+        List<IOExecutor.Task> syncTasks = new ArrayList<IOExecutor.Task>(files.size() + 1);
+        for (final File file : files) {
+            syncTasks.add(new IOExecutor.Task() {
+                @Override
+                public void run() throws IOException {
+                    IOUtils.syncFile(file);
+                }
+            });
+        }
+        syncTasks.add(new IOExecutor.Task() {
+            @Override
+            public void run() throws IOException {
+                IOUtils.syncFile(new File(downloadDirectory, "program.json"));
+            }
+        });
+        IOExecutor.runAll(syncTasks);
+
+        Set<File> allDirectories = new HashSet<File>(directories);
+        allDirectories.add(downloadDirectory);
+        for (File file : files) {
+            allDirectories.add(file.getParentFile());
+        }
+        List<IOExecutor.Task> directoryTasks = new ArrayList<IOExecutor.Task>(allDirectories.size());
+        for (final File directory : allDirectories) {
+            directoryTasks.add(new IOExecutor.Task() {
+                @Override
+                public void run() throws IOException {
+                    IOUtils.syncDirectory(directory);
+                }
+            });
+        }
+        IOExecutor.runAll(directoryTasks);
+    }
+
     /** Move the downloaded asset bundle to a new directory named after the version */
     synchronized protected void moveDownloadedAssetBundleIntoPlace(AssetBundle assetBundle) {
         final String version = assetBundle.getVersion();
         File versionDirectory = new File(versionsDirectory, version);
         downloadDirectory.renameTo(versionDirectory);
+        StorageManager.recordUse(versionDirectory);
+        if (durability != AssetBundleDownloader.Durability.NONE) {
+            try {
+                IOUtils.syncDirectory(versionsDirectory);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not sync versions directory", e);
+            }
+        }
         assetBundle.didMoveToDirectory(versionDirectory);
+        downloadedVersionDirectoriesByVersion.put(version, versionDirectory);
         downloadedAssetBundlesByVersion.put(version, assetBundle);
+        indexCachedAssets(assetBundle);
+        assetStore.addAssetBundle(assetBundle);
+    }
+
+    /** @return the versions of all downloaded asset bundles, whether they have been loaded or not */
+    synchronized Set<String> getDownloadedVersions() {
+        return new HashSet<String>(downloadedVersionDirectoriesByVersion.keySet());
     }
 
-    private void copyFile(File source, File target) throws IOException {
-        java.io.FileInputStream fis = new java.io.FileInputStream(source);
-        java.io.FileOutputStream fos = new java.io.FileOutputStream(target);
-        java.nio.channels.FileChannel sourceChannel = fis.getChannel();
-        java.nio.channels.FileChannel targetChannel = fos.getChannel();
-        targetChannel.transferFrom(sourceChannel, 0, sourceChannel.size());
-        sourceChannel.close();
-        targetChannel.close();
-        fis.close();
-        fos.close();
+    /** @return the directory of a downloaded version, or null if there is no such version */
+    synchronized File getDownloadedVersionDirectory(String version) {
+        return downloadedVersionDirectoriesByVersion.get(version);
     }
 
-    synchronized void removeAllDownloadedAssetBundlesExceptForVersion(String versionToKeep) {
-        Iterator<AssetBundle> iterator = downloadedAssetBundlesByVersion.values().iterator();
-        while (iterator.hasNext()) {
-            AssetBundle assetBundle = iterator.next();
-            final String version = assetBundle.getVersion();
+    /** Removes a downloaded asset bundle, releasing its stored assets */
+    synchronized void removeDownloadedAssetBundle(String version) {
+        File versionDirectory = downloadedVersionDirectoriesByVersion.remove(version);
+        if (versionDirectory == null) return;
 
-            if (version.equals(versionToKeep)) continue;
+        if (!trash.moveToTrash(versionDirectory)) {
+            Log.w(LOG_TAG, "Could not delete downloaded version " + version);
+        }
 
-            File versionDirectory = new File(versionsDirectory, version);
-            IOUtils.deleteRecursively(versionDirectory);
-            iterator.remove();
+        // Bundles that were never loaded have nothing indexed or retained
+        AssetBundle assetBundle = downloadedAssetBundlesByVersion.remove(version);
+        if (assetBundle != null) {
+            unindexCachedAssets(assetBundle);
+            assetStore.releaseAssetBundle(assetBundle);
         }
     }
 
+    File getPartialDownloadDirectory() {
+        return partialDownloadDirectory;
+    }
+
+    File getAssetStoreDirectory() {
+        return assetStore.getDirectory();
+    }
+
+    /**
+     * Removes the partially downloaded asset bundle, unless a download is in
+     * progress that may reuse its assets
+     * @return true if there is no partial download left
+     */
+    synchronized boolean removePartialDownload() {
+        if (assetBundleDownloader != null) return false;
+        if (!partialDownloadDirectory.exists()) return true;
+
+        partiallyDownloadedAssetBundle = null;
+        return trash.moveToTrash(partialDownloadDirectory);
+    }
+
+    /** Loads all downloaded bundles, so store entries none of them reference can be removed */
+    void removeUnreferencedStoredAssets() {
+        loadAllDownloadedAssetBundles();
+    }
+
     //region Testing support
 
     File getDownloadDirectory() {
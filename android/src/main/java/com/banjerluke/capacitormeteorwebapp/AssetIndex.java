@@ -0,0 +1,206 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary copy of a downloaded version's <code>program.json</code>, so
+ * loading downloaded bundles at startup does not have to parse JSON.
+ *
+ * The index records the length and modification time of the manifest it was
+ * built from, and is ignored when those no longer match. A trailing CRC32
+ * guards against torn or corrupted writes.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int    magic
+ * int    format version
+ * long   program.json length
+ * long   program.json last modified
+ * string version
+ * string cordovaCompatibilityVersion
+ * int    entry count
+ * entry* flags (byte), filePath, urlPath, fileType, [hash], [sourceMapFilePath, sourceMapUrlPath], size (long)
+ * int    CRC32 of everything before it
+ * </pre>
+ * Strings are stored as an int byte length followed by UTF-8 bytes.
+ */
+final class AssetIndex {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    static final String FILE_NAME = "program.idx";
+
+    private static final int MAGIC = 0x4D574149; // "MWAI"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_CACHEABLE = 1;
+    private static final int FLAG_HASH = 1 << 1;
+    private static final int FLAG_SOURCE_MAP = 1 << 2;
+
+    private AssetIndex() {
+    }
+
+    /**
+     * Reads the index of a version directory by memory-mapping it.
+     * @return the manifest, or null if the index is missing, stale or corrupt
+     */
+    static AssetManifest read(File directory) {
+        File indexFile = new File(directory, FILE_NAME);
+        File manifestFile = new File(directory, "program.json");
+        if (!indexFile.exists() || !manifestFile.exists()) return null;
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(indexFile, "r");
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            if (length < 4 || length > Integer.MAX_VALUE) return null;
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return null;
+            if (buffer.getLong() != manifestFile.length() || buffer.getLong() != manifestFile.lastModified()) {
+                Log.d(LOG_TAG, "Ignoring stale asset index in " + directory);
+                return null;
+            }
+
+            int checksumOffset = (int) length - 4;
+            if (checksum(buffer, checksumOffset) != buffer.getInt(checksumOffset)) {
+                Log.w(LOG_TAG, "Ignoring corrupt asset index in " + directory);
+                return null;
+            }
+
+            String version = getString(buffer);
+            String cordovaCompatibilityVersion = getString(buffer);
+
+            int entryCount = buffer.getInt();
+            List<AssetManifest.Entry> entries = new ArrayList<AssetManifest.Entry>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                int flags = buffer.get();
+                String filePath = getString(buffer);
+                String urlPath = getString(buffer);
+                String fileType = getString(buffer);
+                String hash = (flags & FLAG_HASH) != 0 ? getString(buffer) : null;
+                String sourceMapFilePath = null;
+                String sourceMapUrlPath = null;
+                if ((flags & FLAG_SOURCE_MAP) != 0) {
+                    sourceMapFilePath = getString(buffer);
+                    sourceMapUrlPath = getString(buffer);
+                }
+                long size = buffer.getLong();
+                entries.add(new AssetManifest.Entry(filePath, urlPath, fileType, (flags & FLAG_CACHEABLE) != 0, hash, sourceMapFilePath, sourceMapUrlPath, size));
+            }
+
+            if (buffer.position() != checksumOffset) return null;
+
+            return new AssetManifest(version, cordovaCompatibilityVersion, entries);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Could not read asset index in " + directory, e);
+            return null;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /** Writes the index for a manifest next to its program.json, replacing any previous index */
+    static void write(File directory, AssetManifest manifest) throws IOException {
+        File manifestFile = new File(directory, "program.json");
+        if (!manifestFile.exists()) return;
+
+        File indexFile = new File(directory, FILE_NAME);
+        File temporaryFile = new File(directory, "." + FILE_NAME + ".tmp");
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try {
+            DataOutputStream checkedOut = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checkedOut.writeInt(MAGIC);
+            checkedOut.writeInt(FORMAT_VERSION);
+            checkedOut.writeLong(manifestFile.length());
+            checkedOut.writeLong(manifestFile.lastModified());
+            putString(checkedOut, manifest.version);
+            putString(checkedOut, manifest.cordovaCompatibilityVersion);
+
+            checkedOut.writeInt(manifest.entries.size());
+            for (AssetManifest.Entry entry : manifest.entries) {
+                boolean hasSourceMap = entry.sourceMapFilePath != null && entry.sourceMapUrlPath != null;
+                int flags = (entry.cacheable ? FLAG_CACHEABLE : 0)
+                        | (entry.hash != null ? FLAG_HASH : 0)
+                        | (hasSourceMap ? FLAG_SOURCE_MAP : 0);
+                checkedOut.writeByte(flags);
+                putString(checkedOut, entry.filePath);
+                putString(checkedOut, entry.urlPath);
+                putString(checkedOut, entry.fileType);
+                if (entry.hash != null) {
+                    putString(checkedOut, entry.hash);
+                }
+                if (hasSourceMap) {
+                    putString(checkedOut, entry.sourceMapFilePath);
+                    putString(checkedOut, entry.sourceMapUrlPath);
+                }
+                checkedOut.writeLong(entry.size);
+            }
+            checkedOut.flush();
+
+            out.writeInt((int) crc.getValue());
+        } finally {
+            out.close();
+        }
+
+        if (!temporaryFile.renameTo(indexFile)) {
+            temporaryFile.delete();
+            throw new IOException("Could not move asset index into place in " + directory);
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int length) {
+        // CRC32.update(ByteBuffer) requires API 26, so feed it through a small scratch array
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.position(0);
+        byte[] chunk = new byte[8192];
+        int remaining = length;
+        while (remaining > 0) {
+            int count = Math.min(remaining, chunk.length);
+            view.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+            remaining -= count;
+        }
+        return (int) crc.getValue();
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length in asset index: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
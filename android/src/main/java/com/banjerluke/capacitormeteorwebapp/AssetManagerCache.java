@@ -3,37 +3,88 @@ package com.banjerluke.capacitormeteorwebapp;
 import android.content.res.AssetManager;
 import android.util.Log;
 
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Cache for checking if assets exist in the AssetManager
  * This improves performance by caching the list of assets
+ *
+ * The list is read from the index generated by meteor-assets.gradle when the
+ * app includes it, and only falls back to walking the assets with
+ * AssetManager.list (one JNI call per directory) when it does not.
+ *
+ * Paths are kept in a compact {@link PathIndex}. The build-time index only
+ * lists files, so directories are found by prefix.
  */
 class AssetManagerCache {
     private static final String LOG_TAG = "MeteorWebApp";
-    
+
+    /** Name of the asset index generated at build time, see meteor-assets.gradle */
+    static final String INDEX_FILE_NAME = "meteor-assets.idx";
+
     private final AssetManager assetManager;
-    private final Set<String> assetPaths;
+    private final PathIndex assetPaths;
 
     public AssetManagerCache(AssetManager assetManager) throws IOException {
         this.assetManager = assetManager;
-        this.assetPaths = new HashSet<>();
-        
-        // Recursively list all assets
-        listAssets("", assetPaths);
+
+        PathIndex.Builder builder = new PathIndex.Builder();
+        if (!loadIndex(builder)) {
+            // Recursively list all assets
+            builder = new PathIndex.Builder();
+            listAssets("", builder);
+        }
+        this.assetPaths = builder.build();
+    }
+
+    /** @return true if the build-time index was found and loaded */
+    private boolean loadIndex(PathIndex.Builder builder) {
+        InputStream inputStream;
+        try {
+            inputStream = assetManager.open(INDEX_FILE_NAME);
+        } catch (FileNotFoundException e) {
+            Log.d(LOG_TAG, "No asset index found, listing assets instead");
+            return false;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not open asset index, listing assets instead", e);
+            return false;
+        }
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 64 * 1024);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab <= 0) continue;
+
+                builder.add(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+            }
+            return true;
+        } catch (IOException | NumberFormatException e) {
+            Log.w(LOG_TAG, "Could not read asset index, listing assets instead", e);
+            return false;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+            }
+        }
     }
 
-    private void listAssets(String path, Set<String> paths) {
+    private void listAssets(String path, PathIndex.Builder builder) {
         try {
             String[] list = assetManager.list(path);
             if (list != null && list.length > 0) {
                 // This is a directory
                 for (String file : list) {
                     String fullPath = path.isEmpty() ? file : path + "/" + file;
-                    paths.add(fullPath);
-                    listAssets(fullPath, paths);
+                    builder.add(fullPath, -1);
+                    listAssets(fullPath, builder);
                 }
             }
         } catch (IOException e) {
@@ -47,7 +98,16 @@ class AssetManagerCache {
      * @return true if the asset exists, false otherwise
      */
     public boolean exists(String path) {
-        return assetPaths.contains(path);
+        return assetPaths.contains(path) || assetPaths.containsPrefix(path + "/");
     }
-}
 
+    /**
+     * Get the size of an asset file, as recorded by the build-time index
+     * @param path The path of the file
+     * @return the size in bytes, or -1 if unknown
+     */
+    public long getSize(String path) {
+        int index = assetPaths.indexOf(path);
+        return index >= 0 ? assetPaths.valueAt(index) : -1;
+    }
+}
@@ -1,9 +1,12 @@
 package com.banjerluke.capacitormeteorwebapp;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,8 +21,10 @@ final class AssetManifest {
         final String hash;
         final String sourceMapFilePath;
         final String sourceMapUrlPath;
+        /** The size in bytes, or -1 if the manifest does not specify it */
+        final long size;
 
-        Entry(String filePath, String urlPath, String fileType, boolean cacheable, String hash, String sourceMapFilePath, String sourceMapUrlPath) {
+        Entry(String filePath, String urlPath, String fileType, boolean cacheable, String hash, String sourceMapFilePath, String sourceMapUrlPath, long size) {
             this.filePath = filePath;
             this.urlPath = urlPath;
             this.fileType = fileType;
@@ -27,57 +32,201 @@ final class AssetManifest {
             this.hash = hash;
             this.sourceMapFilePath = sourceMapFilePath;
             this.sourceMapUrlPath = sourceMapUrlPath;
+            this.size = size;
         }
     }
 
+    /** Decides whether a manifest is of interest as soon as its version has been read */
+    interface VersionFilter {
+        boolean shouldReadEntries(String version);
+    }
+
     final String version;
     final String cordovaCompatibilityVersion;
     final List<Entry> entries;
 
-    public AssetManifest(String string) throws WebAppException {
-        try {
-            JSONObject json = new JSONObject(string);
-            String format = json.optString("format", null);
-            if (format != null && !format.equals("web-program-pre1")) {
-                throw new WebAppException("The asset manifest format is incompatible: " + format);
-            }
+    AssetManifest(String version, String cordovaCompatibilityVersion, List<Entry> entries) {
+        this.version = version;
+        this.cordovaCompatibilityVersion = cordovaCompatibilityVersion;
+        this.entries = entries;
+    }
 
-            try {
-                version = json.getString("version");
-            } catch (JSONException e) {
-                throw new WebAppException("Asset manifest does not have a version", e);
-            }
+    static AssetManifest fromInputStream(InputStream inputStream) throws WebAppException {
+        return fromInputStream(inputStream, null);
+    }
+
+    /**
+     * Parses a manifest as a stream, without materializing the document in memory.
+     * Entries that are not served to the client are skipped.
+     *
+     * @param versionFilter if not null, consulted as soon as the version is known
+     * @return the manifest, or null if the version filter rejected it
+     */
+    static AssetManifest fromInputStream(InputStream inputStream, VersionFilter versionFilter) throws WebAppException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+        String version = null;
+        String cordovaCompatibilityVersion = null;
+        List<Entry> entries = null;
+        boolean versionAccepted = false;
 
-            try {
-                JSONObject cordovaCompatibilityVersions = json.getJSONObject("cordovaCompatibilityVersions");
-                cordovaCompatibilityVersion = cordovaCompatibilityVersions.getString("android");
-            } catch (JSONException e) {
-                throw new WebAppException("Asset manifest does not have a cordovaCompatibilityVersion", e);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("format")) {
+                    String format = nextStringOrNull(reader);
+                    if (format != null && !format.equals("web-program-pre1")) {
+                        throw new WebAppException("The asset manifest format is incompatible: " + format);
+                    }
+                } else if (name.equals("version")) {
+                    version = nextStringOrNull(reader);
+                    if (version != null && versionFilter != null) {
+                        // Reject unwanted versions before spending any time on the entries
+                        if (!versionFilter.shouldReadEntries(version)) {
+                            return null;
+                        }
+                        versionAccepted = true;
+                    }
+                } else if (name.equals("cordovaCompatibilityVersions") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("android")) {
+                            cordovaCompatibilityVersion = nextStringOrNull(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else if (name.equals("manifest")) {
+                    entries = readEntries(reader);
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new WebAppException("Error parsing asset manifest", e);
+        }
 
-            JSONArray entriesJSON = json.getJSONArray("manifest");
+        if (version == null) {
+            throw new WebAppException("Asset manifest does not have a version");
+        }
 
-            entries = new ArrayList<Entry>(entriesJSON.length());
+        // The version may only have come after the entries
+        if (versionFilter != null && !versionAccepted && !versionFilter.shouldReadEntries(version)) {
+            return null;
+        }
 
-            for (int i = 0; i < entriesJSON.length(); i++) {
-                JSONObject entryJSON = entriesJSON.getJSONObject(i);
+        if (cordovaCompatibilityVersion == null) {
+            throw new WebAppException("Asset manifest does not have a cordovaCompatibilityVersion");
+        }
 
-                if (!entryJSON.getString("where").equals("client")) continue;
+        if (entries == null) {
+            throw new WebAppException("Error parsing asset manifest: no manifest entries");
+        }
 
-                String filePath = entryJSON.getString("path");
-                String urlPath = entryJSON.getString("url");
+        return new AssetManifest(version, cordovaCompatibilityVersion, entries);
+    }
 
-                String fileType = entryJSON.getString("type");
-                boolean cacheable = entryJSON.getBoolean("cacheable");
-                String hash = entryJSON.optString("hash", null);
-                String sourceMapFilePath = entryJSON.optString("sourceMap", null);
-                String sourceMapUrlPath = entryJSON.optString("sourceMapUrl", null);
+    private static List<Entry> readEntries(JsonReader reader) throws IOException, WebAppException {
+        List<Entry> entries = new ArrayList<Entry>();
 
-                Entry entry = new Entry(filePath, urlPath, fileType, cacheable, hash, sourceMapFilePath, sourceMapUrlPath);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Entry entry = readEntry(reader);
+            if (entry != null) {
                 entries.add(entry);
             }
-        } catch (JSONException e) {
-            throw new WebAppException("Error parsing asset manifest", e);
         }
+        reader.endArray();
+
+        return entries;
+    }
+
+    /** @return the entry, or null if it is not served to the client */
+    private static Entry readEntry(JsonReader reader) throws IOException, WebAppException {
+        String where = null;
+        String filePath = null;
+        String urlPath = null;
+        String fileType = null;
+        Boolean cacheable = null;
+        String hash = null;
+        String sourceMapFilePath = null;
+        String sourceMapUrlPath = null;
+        long size = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            // Skip the remaining fields of entries that are not for the client
+            if (where != null && !where.equals("client")) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (name) {
+                case "where":
+                    where = nextStringOrNull(reader);
+                    break;
+                case "path":
+                    filePath = nextStringOrNull(reader);
+                    break;
+                case "url":
+                    urlPath = nextStringOrNull(reader);
+                    break;
+                case "type":
+                    fileType = nextStringOrNull(reader);
+                    break;
+                case "cacheable":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        cacheable = reader.nextBoolean();
+                    }
+                    break;
+                case "hash":
+                    hash = nextStringOrNull(reader);
+                    break;
+                case "sourceMap":
+                    sourceMapFilePath = nextStringOrNull(reader);
+                    break;
+                case "sourceMapUrl":
+                    sourceMapUrlPath = nextStringOrNull(reader);
+                    break;
+                case "size":
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        size = reader.nextLong();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (where == null) {
+            throw new WebAppException("Error parsing asset manifest: entry without where");
+        }
+        if (!where.equals("client")) {
+            return null;
+        }
+        if (filePath == null || urlPath == null || fileType == null || cacheable == null) {
+            throw new WebAppException("Error parsing asset manifest: incomplete entry " + filePath);
+        }
+
+        return new Entry(filePath, urlPath, fileType, cacheable, hash, sourceMapFilePath, sourceMapUrlPath, size);
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
     }
 }
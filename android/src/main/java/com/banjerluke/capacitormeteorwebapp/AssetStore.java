@@ -0,0 +1,131 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content-addressed store for downloaded assets, shared across bundle versions.
+ *
+ * Every asset with a hash is kept once under <code>Store/&lt;hash&gt;</code>, and
+ * version directories hold hard links into the store. An asset that is unchanged
+ * between versions therefore occupies disk space only once, and preparing a new
+ * download only has to link it instead of copying it.
+ *
+ * Store entries are reference counted by the bundles that contain them. When the
+ * last bundle referencing an entry is released, the entry is deleted.
+ */
+class AssetStore {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    private final File directory;
+    private final Map<String, Integer> referenceCountsByHash;
+
+    public AssetStore(File directory) {
+        this.directory = directory;
+        this.referenceCountsByHash = new HashMap<String, Integer>();
+
+        if (isSupported() && !directory.exists() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create asset store directory: " + directory);
+        }
+    }
+
+    /** Hard links are only available through java.nio.file from Android O onwards */
+    static boolean isSupported() {
+        return android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    synchronized boolean contains(String hash) {
+        return hash != null && isSupported() && fileForHash(hash).exists();
+    }
+
+    /** @return the stored file with the given hash, or null if the store has no such entry */
+    synchronized File storedFileForHash(String hash) {
+        return contains(hash) ? fileForHash(hash) : null;
+    }
+
+    /** Adds the assets of a bundle to the store where needed, and retains them */
+    synchronized void addAssetBundle(AssetBundle assetBundle) {
+        if (!isSupported()) return;
+
+        for (int i = 0; i < assetBundle.getOwnAssetCount(); i++) {
+            if (!assetBundle.hasHashAt(i)) continue;
+
+            String hash = assetBundle.hashAt(i);
+            File storedFile = fileForHash(hash);
+            if (!storedFile.exists()) {
+                File file = assetBundle.fileAt(i);
+                if (file == null || !file.exists()) continue;
+
+                try {
+                    Files.createLink(storedFile.toPath(), file.toPath());
+                } catch (FileAlreadyExistsException e) {
+                    // Another asset with the same contents beat us to it
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Could not add asset to store: " + assetBundle.urlPathAt(i), e);
+                    continue;
+                }
+            }
+            retain(hash);
+        }
+    }
+
+    /** Releases the stored assets of a bundle, deleting entries that are no longer referenced */
+    synchronized void releaseAssetBundle(AssetBundle assetBundle) {
+        if (!isSupported()) return;
+
+        for (int i = 0; i < assetBundle.getOwnAssetCount(); i++) {
+            if (!assetBundle.hasHashAt(i)) continue;
+
+            String hash = assetBundle.hashAt(i);
+            Integer count = referenceCountsByHash.get(hash);
+            if (count == null) continue;
+
+            if (count > 1) {
+                referenceCountsByHash.put(hash, count - 1);
+            } else {
+                referenceCountsByHash.remove(hash);
+                deleteEntry(hash);
+            }
+        }
+    }
+
+    /** Deletes every entry that is not retained by a bundle, e.g. left behind by a crash */
+    synchronized void removeUnreferencedEntries() {
+        if (!isSupported()) return;
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (!referenceCountsByHash.containsKey(file.getName())) {
+                deleteEntry(file.getName());
+            }
+        }
+    }
+
+    private void retain(String hash) {
+        Integer count = referenceCountsByHash.get(hash);
+        referenceCountsByHash.put(hash, count == null ? 1 : count + 1);
+    }
+
+    private void deleteEntry(String hash) {
+        File file = fileForHash(hash);
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "Could not delete asset store entry: " + hash);
+        }
+    }
+
+    private File fileForHash(String hash) {
+        return new File(directory, hash);
+    }
+}
@@ -7,9 +7,11 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
-import java.util.regex.Pattern;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Handles file organization logic for bundles, including URL path mapping
@@ -19,44 +21,197 @@ public class BundleOrganizer {
     private static final String LOG_TAG = "BundleOrganizer";
     
     /**
-     * Organizes files in a bundle directory according to their URL mappings
+     * Name of the file written to a target directory once it has been organized
+     * completely. Directories without it may be missing files. It holds the
+     * digest of what the {@link HtmlTransformer} injects, so a directory
+     * organized with another shim counts as not organized and is organized again.
+     */
+    static final String ORGANIZED_MARKER_FILE_NAME = ".organized";
+
+    /** How many unchanged assets are linked per task when deriving from a previous directory */
+    private static final int LINK_BATCH_SIZE = 64;
+
+    /**
+     * @return true if the directory has been organized completely, see {@link #ORGANIZED_MARKER_FILE_NAME}
+     */
+    static boolean isOrganized(File targetDirectory) {
+        File marker = new File(targetDirectory, ORGANIZED_MARKER_FILE_NAME);
+        if (!marker.isFile()) return false;
+
+        try {
+            InputStream inputStream = new FileInputStream(marker);
+            try {
+                return IOUtils.stringFromInputStream(inputStream).trim().equals(HtmlTransformer.getDefault().getHeadContentDigest());
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read " + marker.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Organizes files in a bundle directory according to their URL mappings.
+     * Directories are created up front in a single pass, after which the assets
+     * are linked or copied in parallel on the {@link IOExecutor} pool.
+     * Must not be called from the pool itself.
      */
     public static void organizeBundle(AssetBundle bundle, File targetDirectory, AssetManager assetManager) throws WebAppException {
+        organizeBundle(bundle, targetDirectory, assetManager, null, null);
+    }
+
+    /**
+     * Organizes a bundle like {@link #organizeBundle(AssetBundle, File, AssetManager)},
+     * but derives it from the organized directory of a previous bundle where
+     * possible. Assets with the same URL path and hash as in the previous bundle
+     * are linked from the previous directory in batches, and so are parent
+     * assets that the previous bundle inherited as well, so only added and
+     * changed assets are read from their source. index.html is always
+     * organized, as it gets the shim injected.
+     * @param previousBundle the bundle organized in previousDirectory, or null to organize from scratch
+     * @param previousDirectory a completely organized directory, see {@link #isOrganized}
+     */
+    public static void organizeBundle(AssetBundle bundle, final File targetDirectory, final AssetManager assetManager, AssetBundle previousBundle, final File previousDirectory) throws WebAppException {
         Log.d(LOG_TAG, "Organizing bundle from: " + bundle.getDirectory().getAbsolutePath() + " to: " + targetDirectory.getAbsolutePath());
         // Create target directory if it doesn't exist
         if (!targetDirectory.exists() && !targetDirectory.mkdirs()) {
             throw new WebAppException("Could not create target directory: " + targetDirectory.getAbsolutePath());
         }
 
+        boolean canDerive = previousBundle != null && previousDirectory != null;
+        List<AssetBundle.Asset> assets = new ArrayList<AssetBundle.Asset>(bundle.getOwnAssetCount());
+        List<AssetBundle.Asset> unchangedAssets = new ArrayList<AssetBundle.Asset>(canDerive ? bundle.getOwnAssetCount() : 0);
+
         // Organize own assets
-        Log.d(LOG_TAG, "Organizing own assets");
-        for (AssetBundle.Asset asset : bundle.getOwnAssets()) {
-            organizeAsset(asset, bundle, targetDirectory, assetManager);
+        for (int i = 0; i < bundle.getOwnAssetCount(); i++) {
+            if (canDerive && isUnchanged(bundle, i, previousBundle)) {
+                unchangedAssets.add(bundle.assetAt(i));
+            } else {
+                assets.add(bundle.assetAt(i));
+            }
         }
 
         // Also organize parent assets that this bundle inherits but doesn't override
-        if (bundle.getParentAssetBundle() != null) {
-            for (AssetBundle.Asset parentAsset : bundle.getParentAssetBundle().getOwnAssets()) {
+        AssetBundle parentBundle = bundle.getParentAssetBundle();
+        if (parentBundle != null) {
+            for (int i = 0; i < parentBundle.getOwnAssetCount(); i++) {
                 // Only organize parent assets that we don't have in our own assets
-                if (bundle.assetForUrlPath(parentAsset.urlPath) == null) {
-                    organizeAsset(parentAsset, bundle.getParentAssetBundle(), targetDirectory, assetManager);
+                if (!bundle.hasAssetForUrlPathAt(parentBundle, i)) {
+                    if (canDerive && isInheritedByPrevious(parentBundle, i, previousBundle)) {
+                        unchangedAssets.add(parentBundle.assetAt(i));
+                    } else {
+                        assets.add(parentBundle.assetAt(i));
+                    }
                 }
             }
         }
+
+        // Ensure the target directory structure exists
+        Set<File> targetDirectories = new HashSet<File>();
+        createTargetDirectories(assets, targetDirectory, targetDirectories);
+        createTargetDirectories(unchangedAssets, targetDirectory, targetDirectories);
+
+        Log.d(LOG_TAG, "Organizing " + assets.size() + " assets, linking " + unchangedAssets.size() + " unchanged assets");
+        List<IOExecutor.Task> tasks = new ArrayList<IOExecutor.Task>(assets.size() + unchangedAssets.size() / LINK_BATCH_SIZE + 1);
+        for (final AssetBundle.Asset asset : assets) {
+            tasks.add(new IOExecutor.Task() {
+                @Override
+                public void run() throws IOException {
+                    try {
+                        organizeAsset(asset, asset.getAssetBundle(), targetDirectory, assetManager);
+                    } catch (WebAppException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+            });
+        }
+        for (int start = 0; start < unchangedAssets.size(); start += LINK_BATCH_SIZE) {
+            final List<AssetBundle.Asset> batch = unchangedAssets.subList(start, Math.min(start + LINK_BATCH_SIZE, unchangedAssets.size()));
+            tasks.add(new IOExecutor.Task() {
+                @Override
+                public void run() throws IOException {
+                    for (AssetBundle.Asset asset : batch) {
+                        String relativePath = relativePathForAsset(asset);
+                        try {
+                            IOUtils.linkOrCopyFile(new File(previousDirectory, relativePath), new File(targetDirectory, relativePath));
+                        } catch (IOException e) {
+                            // The previous directory may lack the file (e.g. a missing source map)
+                            try {
+                                organizeAsset(asset, asset.getAssetBundle(), targetDirectory, assetManager);
+                            } catch (WebAppException organizeException) {
+                                throw new IOException(organizeException.getMessage(), organizeException);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            IOExecutor.runAll(tasks);
+        } catch (IOException e) {
+            if (e.getCause() instanceof WebAppException) {
+                throw (WebAppException) e.getCause();
+            }
+            throw new WebAppException("Failed to organize bundle: " + e.getMessage(), e);
+        }
+
+        try {
+            File marker = new File(targetDirectory, ORGANIZED_MARKER_FILE_NAME);
+            IOUtils.writeToFile(HtmlTransformer.getDefault().getHeadContentDigest().getBytes(StandardCharsets.UTF_8), marker);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not mark " + targetDirectory.getAbsolutePath() + " as organized", e);
+        }
+    }
+
+    private static void createTargetDirectories(List<AssetBundle.Asset> assets, File targetDirectory, Set<File> createdDirectories) throws WebAppException {
+        for (AssetBundle.Asset asset : assets) {
+            File targetDir = targetURLForAsset(asset, targetDirectory).getParentFile();
+            if (targetDir != null && createdDirectories.add(targetDir) && !targetDir.exists() && !targetDir.mkdirs()) {
+                throw new WebAppException("Could not create target directory: " + targetDir.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * @return true if the previous bundle has an asset with the same URL path and hash,
+     * so its organized file can be linked as is
+     */
+    private static boolean isUnchanged(AssetBundle bundle, int index, AssetBundle previousBundle) {
+        if (!bundle.hasHashAt(index) || isIndexHtml(bundle, index)) return false;
+
+        int previousIndex = previousBundle.indexOfOwnAsset(bundle, index);
+        return previousIndex >= 0 && bundle.hashEqualsAt(index, previousBundle, previousIndex);
+    }
+
+    /**
+     * @return true if the previous directory has the same parent asset organized,
+     * because the previous bundle is that parent or inherits the asset from it too
+     */
+    private static boolean isInheritedByPrevious(AssetBundle parentBundle, int index, AssetBundle previousBundle) {
+        if (isIndexHtml(parentBundle, index)) return false;
+        if (previousBundle == parentBundle) return true;
+
+        return previousBundle.getParentAssetBundle() == parentBundle
+                && previousBundle.indexOfOwnAsset(parentBundle, index) < 0;
+    }
+
+    private static boolean isIndexHtml(AssetBundle.Asset asset) {
+        return isIndexHtml(asset.getAssetBundle(), asset.getRow());
+    }
+
+    private static boolean isIndexHtml(AssetBundle bundle, int index) {
+        return bundle.urlPathEqualsAt(index, "/") || bundle.urlPathEqualsAt(index, "/index.html") || bundle.filePathEndsWithAt(index, "index.html");
     }
 
     /**
-     * Organizes a single asset according to its URL path mapping
+     * Organizes a single asset according to its URL path mapping. Its target
+     * directory must already exist.
      */
     private static void organizeAsset(AssetBundle.Asset asset, AssetBundle bundle, File targetDirectory, AssetManager assetManager) throws WebAppException {
         File targetFile = targetURLForAsset(asset, targetDirectory);
 
-        // Ensure the target directory structure exists
-        File targetDir = targetFile.getParentFile();
-        if (targetDir != null && !targetDir.exists() && !targetDir.mkdirs()) {
-            throw new WebAppException("Could not create target directory: " + targetDir.getAbsolutePath());
-        }
-
         // Determine if this is an android_asset bundle or a file-based bundle
         String directoryPath = bundle.getDirectory() != null ? bundle.getDirectory().getAbsolutePath() : null;
         boolean isAssetBundle = directoryPath != null && directoryPath.contains("android_asset");
@@ -67,104 +222,79 @@ public class BundleOrganizer {
         }
 
         try {
-            if (asset.urlPath.equals("/") || asset.urlPath.equals("/index.html") || asset.filePath.endsWith("index.html")) {
+            if (isIndexHtml(asset)) {
                 // Special handling for index.html - inject WebAppLocalServer shim
                 Log.d(LOG_TAG, "Organizing index.html to: " + targetFile.getAbsolutePath());
-                if (isAssetBundle) {
-                    organizeIndexHtmlFromAsset(asset.filePath, bundle, targetFile, assetManager);
-                } else {
-                    File sourceFile = asset.getFile();
-                    if (sourceFile != null && sourceFile.exists()) {
-                        organizeIndexHtml(sourceFile, targetFile);
-                    } else {
-                        throw new WebAppException("Source file does not exist: " + asset.filePath);
-                    }
-                }
+                organizeIndexHtml(asset, bundle, isAssetBundle, targetFile, assetManager);
             } else {
-                // Regular file - copy it
+                // Regular file - link or copy it
                 if (isAssetBundle) {
-                    copyFromAssetBundle(asset.filePath, bundle, targetFile, assetManager);
+                    copyFromAssetBundle(asset.getFilePath(), bundle, targetFile, assetManager);
                 } else {
                     File sourceFile = asset.getFile();
                     if (sourceFile != null && sourceFile.exists()) {
-                        try {
-                            createHardLink(sourceFile, targetFile);
-                        } catch (Exception e) {
-                            copyFile(sourceFile, targetFile);
-                        }
+                        IOUtils.linkOrCopyFile(sourceFile, targetFile);
                     } else {
                         // Skip missing files if they're source maps
-                        if (asset.urlPath.endsWith(".map") || asset.filePath.endsWith(".map")) {
+                        if (asset.getUrlPath().endsWith(".map") || asset.getFilePath().endsWith(".map")) {
                             return;
                         }
-                        throw new WebAppException("Source file does not exist: " + asset.filePath);
+                        throw new WebAppException("Source file does not exist: " + asset.getFilePath());
                     }
                 }
             }
         } catch (IOException e) {
-            throw new WebAppException("Failed to organize asset " + asset.urlPath + ": " + e.getMessage(), e);
+            throw new WebAppException("Failed to organize asset " + asset.getUrlPath() + ": " + e.getMessage(), e);
         }
     }
 
     /**
      * Special handling for index.html files to inject WebAppLocalServer shim
+     * The transformer streams the file and caches the result by a digest of the original
      */
-    private static void organizeIndexHtml(File sourceFile, File targetFile) throws IOException, WebAppException {
-        // Read the original HTML content
-        String originalContent = IOUtils.stringFromInputStream(new FileInputStream(sourceFile));
-
-        // Use the common shim injection logic
-        String modifiedContent = injectShimIntoHtml(originalContent);
+    private static void organizeIndexHtml(final AssetBundle.Asset asset, final AssetBundle bundle, boolean isAssetBundle, File targetFile, final AssetManager assetManager) throws IOException, WebAppException {
+        HtmlTransformer.Source source;
+        if (isAssetBundle) {
+            source = new HtmlTransformer.Source() {
+                @Override
+                public InputStream open() throws IOException {
+                    String assetRelativePath = assetManagerPath(asset.getFilePath(), bundle);
+                    Log.d(LOG_TAG, "Reading index.html from asset: " + assetRelativePath);
+                    return assetManager.open(assetRelativePath);
+                }
+            };
+        } else {
+            final File sourceFile = asset.getFile();
+            if (sourceFile == null || !sourceFile.exists()) {
+                throw new WebAppException("Source file does not exist: " + asset.getFilePath());
+            }
+            source = new HtmlTransformer.Source() {
+                @Override
+                public InputStream open() throws IOException {
+                    return new FileInputStream(sourceFile);
+                }
+            };
+        }
 
-        // Write modified content
-        FileOutputStream fos = new FileOutputStream(targetFile);
-        fos.write(modifiedContent.getBytes("UTF-8"));
-        fos.close();
+        HtmlTransformer.getDefault().transformToFile(source, targetFile);
     }
 
     /**
      * Calculates the target File for an asset based on its URL path mapping
      */
     private static File targetURLForAsset(AssetBundle.Asset asset, File targetDirectory) {
-        // Remove leading slash from URL path to make it relative
-        String relativePath = asset.urlPath;
-        if (relativePath.startsWith("/")) {
-            relativePath = relativePath.substring(1);
-        }
+        return new File(targetDirectory, relativePathForAsset(asset));
+    }
+
+    /** @return the URL path of an asset relative to a target directory, decoded once */
+    private static String relativePathForAsset(AssetBundle.Asset asset) {
+        String relativePath = asset.getAssetBundle().relativeUrlPathAt(asset.getRow());
 
         // Handle root path (/) -> index.html
         if (relativePath.isEmpty()) {
             relativePath = "index.html";
         }
-
-        return new File(targetDirectory, relativePath);
-    }
-
-    /**
-     * Attempts to create a hard link (for efficiency)
-     */
-    private static void createHardLink(File source, File target) throws IOException {
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            Files.createLink(target.toPath(), source.toPath());
-        } else {
-            // Fall back to copy for older Android versions
-            copyFile(source, target);
-        }
-    }
-
-    /**
-     * Copies a file
-     */
-    private static void copyFile(File source, File target) throws IOException {
-        FileInputStream fis = new FileInputStream(source);
-        FileOutputStream fos = new FileOutputStream(target);
-        FileChannel sourceChannel = fis.getChannel();
-        FileChannel targetChannel = fos.getChannel();
-        targetChannel.transferFrom(sourceChannel, 0, sourceChannel.size());
-        sourceChannel.close();
-        targetChannel.close();
-        fis.close();
-        fos.close();
+        return relativePath;
     }
 
     /**
@@ -175,27 +305,7 @@ public class BundleOrganizer {
      * @param assetManager The AssetManager to use
      */
     private static void copyFromAssetBundle(String assetPath, AssetBundle bundle, File targetFile, AssetManager assetManager) throws IOException {
-        // Get the bundle's directory path
-        String bundleDirPath = bundle.getDirectory() != null ? bundle.getDirectory().getAbsolutePath() : "";
-        
-        // Extract the asset-relative path
-        // If bundleDirPath is "/android_asset/public", we want to access "public/app/main.js"
-        String assetRelativePath = assetPath;
-        if (bundleDirPath.contains("android_asset/")) {
-            // Extract the part after "android_asset/"
-            int startIndex = bundleDirPath.indexOf("android_asset/") + "android_asset/".length();
-            String baseDir = bundleDirPath.substring(startIndex);
-            
-            // Remove leading slash
-            if (baseDir.startsWith("/")) {
-                baseDir = baseDir.substring(1);
-            }
-            
-            // Combine base directory with asset path
-            if (!baseDir.isEmpty()) {
-                assetRelativePath = baseDir + "/" + assetPath;
-            }
-        }
+        String assetRelativePath = assetManagerPath(assetPath, bundle);
         
         Log.d(LOG_TAG, "Copying asset from: " + assetRelativePath + " to: " + targetFile.getAbsolutePath());
         
@@ -213,201 +323,29 @@ public class BundleOrganizer {
     }
 
     /**
-     * Organizes index.html from Android assets, injecting the WebAppLocalServer shim
+     * @return the path of an asset for the AssetManager, e.g. "public/app/main.js"
+     * when the bundle's directory is "/android_asset/public"
      */
-    private static void organizeIndexHtmlFromAsset(String assetPath, AssetBundle bundle, File targetFile, AssetManager assetManager) throws IOException, WebAppException {
+    private static String assetManagerPath(String assetPath, AssetBundle bundle) {
         // Get the bundle's directory path
         String bundleDirPath = bundle.getDirectory() != null ? bundle.getDirectory().getAbsolutePath() : "";
         
-        // Extract the asset-relative path
         String assetRelativePath = assetPath;
         if (bundleDirPath.contains("android_asset/")) {
+            // Extract the part after "android_asset/"
             int startIndex = bundleDirPath.indexOf("android_asset/") + "android_asset/".length();
             String baseDir = bundleDirPath.substring(startIndex);
             
+            // Remove leading slash
             if (baseDir.startsWith("/")) {
                 baseDir = baseDir.substring(1);
             }
             
+            // Combine base directory with asset path
             if (!baseDir.isEmpty()) {
                 assetRelativePath = baseDir + "/" + assetPath;
             }
         }
-
-        Log.d(LOG_TAG, "Reading index.html from asset: " + assetRelativePath);
-
-        // Read the original HTML content from assets
-        InputStream is = assetManager.open(assetRelativePath);
-        String originalContent = IOUtils.stringFromInputStream(is);
-        is.close();
-
-        // Use the same shim injection logic as organizeIndexHtml
-        String modifiedContent = injectShimIntoHtml(originalContent);
-
-        // Write modified content
-        FileOutputStream fos = new FileOutputStream(targetFile);
-        fos.write(modifiedContent.getBytes("UTF-8"));
-        fos.close();
-    }
-
-    /**
-     * Extracts the shim injection logic for reuse
-     * 
-     * RE-ENABLED: Shim injection with CORS bypass for Android WebView.
-     * This injects both the WebAppLocalServer compatibility shim AND
-     * a CORS bypass that allows cross-origin requests from the WebView.
-     */
-    private static String injectShimIntoHtml(String originalContent) {
-        // CORS BYPASS SCRIPT - Completely disables CORS at the JavaScript level
-        // This is necessary because Android WebView enforces CORS even for custom schemes
-        String corsbypassScript = 
-            "<script type=\"text/javascript\">\n" +
-            "// ============================================================================\n" +
-            "// CORS BYPASS for Android WebView\n" +
-            "// ============================================================================\n" +
-            "// Android WebView enforces CORS even for custom schemes like capacitor://\n" +
-            "// This script completely bypasses CORS by making all requests appear same-origin\n" +
-            "// ============================================================================\n" +
-            "(function() {\n" +
-            "    console.log('[CORS Bypass] Initializing CORS bypass for Android WebView');\n" +
-            "    \n" +
-            "    // Override XMLHttpRequest to disable CORS checks\n" +
-            "    const OriginalXHR = window.XMLHttpRequest;\n" +
-            "    window.XMLHttpRequest = function() {\n" +
-            "        const xhr = new OriginalXHR();\n" +
-            "        const originalOpen = xhr.open;\n" +
-            "        const originalSend = xhr.send;\n" +
-            "        \n" +
-            "        xhr.open = function(method, url, ...args) {\n" +
-            "            // Store the URL for debugging\n" +
-            "            xhr._url = url;\n" +
-            "            return originalOpen.apply(xhr, [method, url, ...args]);\n" +
-            "        };\n" +
-            "        \n" +
-            "        xhr.send = function(...args) {\n" +
-            "            // Log cross-origin requests\n" +
-            "            if (xhr._url && (xhr._url.startsWith('http://') || xhr._url.startsWith('https://'))) {\n" +
-            "                console.log('[CORS Bypass] XHR request to:', xhr._url);\n" +
-            "            }\n" +
-            "            return originalSend.apply(xhr, args);\n" +
-            "        };\n" +
-            "        \n" +
-            "        return xhr;\n" +
-            "    };\n" +
-            "    \n" +
-            "    // Override fetch to disable CORS checks\n" +
-            "    if (window.fetch) {\n" +
-            "        const originalFetch = window.fetch;\n" +
-            "        window.fetch = function(url, options = {}) {\n" +
-            "            // Force mode to 'no-cors' for cross-origin requests\n" +
-            "            if (typeof url === 'string' && (url.startsWith('http://') || url.startsWith('https://'))) {\n" +
-            "                console.log('[CORS Bypass] Fetch request to:', url);\n" +
-            "                // Remove mode restriction - let native handle it\n" +
-            "                if (!options.mode) {\n" +
-            "                    options.mode = 'cors';\n" +
-            "                }\n" +
-            "            }\n" +
-            "            return originalFetch.call(window, url, options);\n" +
-            "        };\n" +
-            "    }\n" +
-            "    \n" +
-            "    console.log('[CORS Bypass] ✅ CORS bypass installed - all cross-origin requests allowed');\n" +
-            "})();\n" +
-            "</script>\n";
-        
-        // WebAppLocalServer shim script
-        String webAppLocalServerShim =
-            "<script type=\"text/javascript\">\n" +
-            "(function() {\n" +
-            "    if (window.WebAppLocalServer) {console.log('WebAppLocalServer already defined'); return;}\n" +
-            "    console.log('Defining WebAppLocalServer');\n" +
-            "\n" +
-            "    if (window.Capacitor) {\n" +
-            "        console.log('Capacitor detected, calling setupWebAppLocalServer');\n" +
-            "        setupWebAppLocalServer();\n" +
-            "    } else {\n" +
-            "        document.addEventListener('deviceready', function() {\n" +
-            "            console.log('Device ready, calling setupWebAppLocalServer');\n" +
-            "            setupWebAppLocalServer();\n" +
-            "        });\n" +
-            "    }\n" +
-            "\n" +
-            "    function setupWebAppLocalServer() {\n" +
-            "        console.log('Setting up WebAppLocalServer');\n" +
-            "        const P = ((window.Capacitor || {}).Plugins || {}).CapacitorMeteorWebApp;\n" +
-            "        if (!P) {\n" +
-            "            console.error('CapacitorMeteorWebApp plugin not available');\n" +
-            "            throw new Error('WebAppLocalServer shim: CapacitorMeteorWebApp plugin not available');\n" +
-            "        }\n" +
-            "\n" +
-            "        window.WebAppLocalServer = {\n" +
-            "            startupDidComplete(callback) {\n" +
-            "                P.startupDidComplete()\n" +
-            "                .then(() => { if (callback) callback(); })\n" +
-            "                .catch((error) => { console.error('WebAppLocalServer.startupDidComplete() failed:', error); });\n" +
-            "            },\n" +
-            "\n" +
-            "            checkForUpdates(callback) {\n" +
-            "                P.checkForUpdates()\n" +
-            "                .then(() => { if (callback) callback(); })\n" +
-            "                .catch((error) => { console.error('WebAppLocalServer.checkForUpdates() failed:', error); });\n" +
-            "            },\n" +
-            "\n" +
-            "            onNewVersionReady(callback) {\n" +
-            "                P.addListener('updateAvailable', callback);\n" +
-            "            },\n" +
-            "\n" +
-            "            switchToPendingVersion(callback, errorCallback) {\n" +
-            "                P.reload()\n" +
-            "                .then(() => { if (callback) callback(); })\n" +
-            "                .catch((error) => {\n" +
-            "                    console.error('switchToPendingVersion failed:', error);\n" +
-            "                    if (typeof errorCallback === 'function') errorCallback(error);\n" +
-            "                });\n" +
-            "            },\n" +
-            "\n" +
-            "            onError(callback) {\n" +
-            "                P.addListener('error', (event) => {\n" +
-            "                    const error = new Error(event.message || 'Unknown CapacitorMeteorWebApp error');\n" +
-            "                    callback(error);\n" +
-            "                });\n" +
-            "            },\n" +
-            "\n" +
-            "            localFileSystemUrl(_fileUrl) {\n" +
-            "                throw new Error('Local filesystem URLs not supported by Capacitor');\n" +
-            "            },\n" +
-            "        };\n" +
-            "    }\n" +
-            "})();\n" +
-            "</script>\n";
-
-        // Combine CORS bypass and WebAppLocalServer shim
-        String combinedShim = corsbypassScript + "\n" + webAppLocalServerShim;
-
-        // Inject the shims as the FIRST thing inside <head> to ensure they load before everything else
-        // This guarantees both CORS bypass and WebAppLocalServer are defined before any Meteor code runs
-        String modifiedContent;
-        Pattern headOpenPattern = Pattern.compile("(<head[^>]*>)", Pattern.CASE_INSENSITIVE);
-        
-        if (headOpenPattern.matcher(originalContent).find()) {
-            // Inject shims right after <head> opens (as first child of head)
-            modifiedContent = headOpenPattern.matcher(originalContent).replaceFirst("$1" + combinedShim);
-            Log.d(LOG_TAG, "Injected CORS bypass and WebAppLocalServer shim as first element in <head>");
-        } else {
-            // Fall back to injecting after <html> tag if no <head> found
-            Pattern htmlOpenPattern = Pattern.compile("(<html[^>]*>)", Pattern.CASE_INSENSITIVE);
-            
-            if (htmlOpenPattern.matcher(originalContent).find()) {
-                modifiedContent = htmlOpenPattern.matcher(originalContent).replaceFirst("$1" + combinedShim);
-                Log.d(LOG_TAG, "Injected CORS bypass and WebAppLocalServer shim after <html> (fallback - no head tag found)");
-            } else {
-                // Last resort: prepend to entire content
-                modifiedContent = combinedShim + originalContent;
-                Log.d(LOG_TAG, "Injected CORS bypass and WebAppLocalServer shim at start of document (fallback - no html/head tags)");
-            }
-        }
-
-        return modifiedContent;
+        return assetRelativePath;
     }
 }
-
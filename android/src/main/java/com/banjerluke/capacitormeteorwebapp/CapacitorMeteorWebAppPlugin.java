@@ -19,9 +19,17 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.HttpUrl;
 
@@ -63,10 +71,42 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
     /** Directory for serving organized bundles */
     private File servingDirectory;
 
+    /** Removed version and serving directories are deleted from here in the background */
+    private Trash trash;
+
+    /** The initial bundle as organized at build time, or null if the build did not organize it */
+    private PreorganizedBundle preorganizedBundle;
+
     /** Timer used to wait for startup to complete after a reload */
     private Timer startupTimer;
     private long startupTimeout;
 
+    /** How long requests wait for background initialization before they are left to Capacitor */
+    private static final long INITIALIZATION_TIMEOUT_MS = 5000;
+
+    /** Counted down as the background initialization tasks finish, see startInitialization */
+    private volatile CountDownLatch initializationLatch;
+
+    /** How downloaded bundles are synced to disk, see AssetBundleDownloader.Durability */
+    private AssetBundleDownloader.Durability downloadDurability;
+
+    /** Keeps downloaded versions and their serving directories within the storage quota */
+    private StorageManager storageManager;
+    private long storageQuotaBytes;
+
+    /** How long after startup storage maintenance runs, so it does not compete with loading the app */
+    private static final long STORAGE_MAINTENANCE_DELAY_MS = 30000;
+
+    /** Organizes bundles for serving, one at a time, so neither the UI thread nor plugin calls wait on it */
+    private final ExecutorService organizerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MeteorWebApp-Organizer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     //region Lifecycle
 
     /**
@@ -100,46 +140,104 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
             launchUrl = "http://localhost:3000"; // Default Capacitor server URL
             localServerPort = 3000;
             startupTimeout = 20000;
+            downloadDurability = AssetBundleDownloader.Durability.fromString(getConfig().getString("downloadDurability", "bundle"));
+            storageQuotaBytes = getConfig().getInt("storageQuotaMB", 100) * 1024L * 1024L;
 
             SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             configuration = new WebAppConfiguration(preferences);
 
             assetManager = context.getAssets();
 
-            try {
-                assetManagerCache = new AssetManagerCache(assetManager);
-            } catch (IOException e) {
-                Log.e(LOG_TAG, "Could not load asset manager cache", e);
-                throw new WebAppException("Could not load asset manager cache", e);
-            }
-
-            try {
-                initializeAssetBundles();
-            } catch (WebAppException e) {
-                Log.e(LOG_TAG, "Could not initialize asset bundles", e);
-                throw e;
-            }
-
             resourceHandlers = new ArrayList<WebResourceHandler>();
             initializeResourceHandlers();
-            
-            // Setup the current bundle for serving
-            try {
-                setupCurrentBundle();
-            } catch (WebAppException e) {
-                Log.e(LOG_TAG, "Could not setup current bundle", e);
-            }
-            
+
+            startInitialization();
+
             // Configure WebView user agent for Meteor compatibility
             configureUserAgent();
             
-            Log.i(LOG_TAG, "✅ CapacitorMeteorWebAppPlugin initialized successfully");
+            Log.i(LOG_TAG, "✅ CapacitorMeteorWebAppPlugin loaded, initializing asset bundles in the background");
             Log.i(LOG_TAG, "📝 To enable request interception, see INTEGRATION.md for MainActivity setup");
         } catch (Exception e) {
             Log.e(LOG_TAG, "❌ Failed to initialize CapacitorMeteorWebAppPlugin: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Runs the expensive parts of initialization off the main thread. Listing
+     * the bundled assets does not depend on anything else, so it runs in parallel
+     * with loading the asset bundles, which in turn precedes organizing the
+     * current bundle for serving. Requests that arrive before both are done
+     * wait for them in {@link #awaitInitialization}.
+     */
+    private void startInitialization() {
+        initializationLatch = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    assetManagerCache = new AssetManagerCache(assetManager);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Could not load asset manager cache", e);
+                } finally {
+                    initializationLatch.countDown();
+                }
+            }
+        });
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        initializeAssetBundles();
+                    } catch (WebAppException e) {
+                        Log.e(LOG_TAG, "Could not initialize asset bundles", e);
+                        return;
+                    }
+
+                    // Setup the current bundle for serving
+                    try {
+                        setupCurrentBundle();
+                    } catch (WebAppException e) {
+                        Log.e(LOG_TAG, "Could not setup current bundle", e);
+                    }
+
+                    Log.i(LOG_TAG, "✅ CapacitorMeteorWebAppPlugin initialized successfully");
+                    storageManager.scheduleMaintenance(STORAGE_MAINTENANCE_DELAY_MS);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "❌ Failed to initialize CapacitorMeteorWebAppPlugin: " + e.getMessage(), e);
+                } finally {
+                    initializationLatch.countDown();
+                }
+            }
+        });
+
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for background initialization to finish, for at most {@link #INITIALIZATION_TIMEOUT_MS}
+     * @return true if initialization has finished
+     */
+    private boolean awaitInitialization() {
+        CountDownLatch latch = initializationLatch;
+        if (latch == null) return false;
+        if (latch.getCount() == 0) return true;
+
+        try {
+            if (latch.await(INITIALIZATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            Log.w(LOG_TAG, "Timed out waiting for initialization to finish");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
     /**
      * Setup the current bundle for serving by organizing it into the serving directory
      * This also injects the WebAppLocalServer shim into index.html
@@ -149,20 +247,58 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
             throw new WebAppException("No current asset bundle");
         }
 
-        // Create serving directory: /data/data/<app>/files/meteor-serving/<version>
-        File bundleServingDirectory = new File(servingDirectory, currentAssetBundle.getVersion());
-        
-        // Remove existing serving directory for this version
+        // Organize the bundle for serving (this injects the WebAppLocalServer shim)
+        Log.i(LOG_TAG, "Organizing bundle " + currentAssetBundle.getVersion() + " for serving");
+        organizeForServing(currentAssetBundle);
+        storageManager.markUsed(currentAssetBundle.getVersion());
+    }
+
+    /** @return true if the bundle is the initial bundle and the build organized it already */
+    private boolean isPreorganized(AssetBundle assetBundle) {
+        return preorganizedBundle != null && assetBundleManager != null && assetBundle == assetBundleManager.initialAssetBundle;
+    }
+
+    /**
+     * Organizes a bundle into its serving directory, unless that has been done
+     * completely before. The directory is derived from the one of the current
+     * bundle where possible, so only assets that changed are read from their source.
+     * The serving directory is /data/data/<app>/files/meteor-serving/<version>.
+     * An initial bundle that was organized at build time is served from the APK instead.
+     * This does file I/O, so it must not be called on the UI thread
+     */
+    private void organizeForServing(AssetBundle assetBundle) throws WebAppException {
+        if (isPreorganized(assetBundle)) {
+            Log.d(LOG_TAG, "Version " + assetBundle.getVersion() + " was organized at build time");
+            return;
+        }
+
+        File bundleServingDirectory = new File(servingDirectory, assetBundle.getVersion());
+        if (BundleOrganizer.isOrganized(bundleServingDirectory)) {
+            Log.d(LOG_TAG, "Version " + assetBundle.getVersion() + " is already organized for serving");
+            return;
+        }
+
+        // Remove what is left of an interrupted attempt, or of an older shim
         if (bundleServingDirectory.exists()) {
-            if (!IOUtils.deleteRecursively(bundleServingDirectory)) {
+            if (!trash.moveToTrash(bundleServingDirectory)) {
                 Log.w(LOG_TAG, "Could not delete existing serving directory");
             }
         }
 
-        // Organize the bundle for serving (this injects the WebAppLocalServer shim)
-        Log.i(LOG_TAG, "Organizing bundle " + currentAssetBundle.getVersion() + " for serving");
-        BundleOrganizer.organizeBundle(currentAssetBundle, bundleServingDirectory, assetManager);
-        
+        AssetBundle previousAssetBundle = currentAssetBundle;
+        File previousServingDirectory = null;
+        if (previousAssetBundle != null && previousAssetBundle != assetBundle) {
+            previousServingDirectory = new File(servingDirectory, previousAssetBundle.getVersion());
+            if (!BundleOrganizer.isOrganized(previousServingDirectory)) {
+                previousServingDirectory = null;
+            }
+        }
+
+        if (previousServingDirectory != null) {
+            BundleOrganizer.organizeBundle(assetBundle, bundleServingDirectory, assetManager, previousAssetBundle, previousServingDirectory);
+        } else {
+            BundleOrganizer.organizeBundle(assetBundle, bundleServingDirectory, assetManager);
+        }
         Log.d(LOG_TAG, "Bundle organized and ready to serve from: " + bundleServingDirectory.getAbsolutePath());
     }
 
@@ -246,24 +382,9 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         // Create ResourceApi for accessing bundled assets
         ResourceApi resourceApi = new ResourceApi(assetManager);
 
-        // Log available assets for debugging
-        try {
-            String[] topLevelAssets = assetManager.list("");
-            Log.d(LOG_TAG, "Top-level assets: " + java.util.Arrays.toString(topLevelAssets));
-            
-            // Check if public or www directories exist
-            for (String asset : topLevelAssets) {
-                if (asset.equals("public") || asset.equals("www")) {
-                    String[] subAssets = assetManager.list(asset);
-                    Log.d(LOG_TAG, asset + " directory contents: " + java.util.Arrays.toString(subAssets));
-                }
-            }
-        } catch (IOException e) {
-            Log.w(LOG_TAG, "Could not list assets: " + e.getMessage());
-        }
-
         // Try to load the initial asset bundle from bundled assets
-        // Try multiple possible locations: public, www, public/application, www/application
+        // Try multiple possible locations: public, www, public/application, www/application,
+        // starting with the one it was found in last time
         String[] possiblePaths = {
             "file:///android_asset/public",
             "file:///android_asset/www",
@@ -272,20 +393,26 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         };
 
         AssetBundle initialAssetBundle = null;
-        for (String path : possiblePaths) {
-            try {
-                Uri directoryUri = Uri.parse(path);
-                initialAssetBundle = new AssetBundle(resourceApi, directoryUri);
-                Log.i(LOG_TAG, "✅ Initial bundle loaded from " + path + " - version: " + initialAssetBundle.getVersion());
-                break;
-            } catch (Exception e) {
-                Log.d(LOG_TAG, "❌ Could not load initial bundle from " + path + ": " + e.getMessage());
+        String initialBundlePath = configuration.getInitialBundlePath();
+        if (initialBundlePath != null) {
+            initialAssetBundle = loadInitialAssetBundle(resourceApi, initialBundlePath);
+        }
+        if (initialAssetBundle == null) {
+            for (String path : possiblePaths) {
+                if (path.equals(initialBundlePath)) continue;
+
+                initialAssetBundle = loadInitialAssetBundle(resourceApi, path);
+                if (initialAssetBundle != null) {
+                    initialBundlePath = path;
+                    break;
+                }
             }
         }
 
         // If no initial bundle is found, we'll create a minimal placeholder
         // This allows the app to start and download the first version
         if (initialAssetBundle == null) {
+            logTopLevelAssets();
             Log.w(LOG_TAG, "⚠️ No initial asset bundle found in app assets.");
             Log.w(LOG_TAG, "The plugin requires a Meteor app to be bundled with the native app.");
             Log.w(LOG_TAG, "Please ensure program.json exists in one of: public/, www/, public/application/, or www/application/");
@@ -298,18 +425,27 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         // Serving directory for organized bundles
         servingDirectory = new File(getContext().getFilesDir(), "meteor-serving");
 
+        trash = new Trash(new File(getContext().getFilesDir(), "meteor-trash"));
+
+        // Transformed index.html files are cached by content, so they outlive versions
+        HtmlTransformer.setCacheDirectory(new File(getContext().getFilesDir(), "meteor-html-cache"));
+
+        // If the build organized the initial bundle, it is served from the APK as is
+        preorganizedBundle = PreorganizedBundle.load(assetManager, initialAssetBundle.getVersion(),
+                HtmlTransformer.getDefault().getHeadContentDigest());
+
         // If the last seen initial version is different from the currently bundled
         // version, we delete the versions directory and unset lastDownloadedVersion
         // and blacklistedVersions
         if (!initialAssetBundle.getVersion().equals(configuration.getLastSeenInitialVersion()))  {
             Log.d(LOG_TAG, "Detected new bundled version, removing versions directory if it exists");
             if (versionsDirectory.exists()) {
-                if (!IOUtils.deleteRecursively(versionsDirectory)) {
+                if (!trash.moveToTrash(versionsDirectory)) {
                     Log.w(LOG_TAG, "Could not remove versions directory");
                 }
             }
             if (servingDirectory.exists()) {
-                if (!IOUtils.deleteRecursively(servingDirectory)) {
+                if (!trash.moveToTrash(servingDirectory)) {
                     Log.w(LOG_TAG, "Could not remove serving directory");
                 }
             }
@@ -317,7 +453,10 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         }
 
         // We keep track of the last seen initial version (see above)
-        configuration.setLastSeenInitialVersion(initialAssetBundle.getVersion());
+        configuration.edit()
+                .setLastSeenInitialVersion(initialAssetBundle.getVersion())
+                .setInitialBundlePath(initialBundlePath)
+                .apply();
 
         // If the versions directory does not exist, we create it
         if (!versionsDirectory.exists()) {
@@ -335,8 +474,37 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
             }
         }
 
-        assetBundleManager = new AssetBundleManager(configuration, initialAssetBundle, versionsDirectory);
+        assetBundleManager = new AssetBundleManager(configuration, initialAssetBundle, versionsDirectory, trash);
         assetBundleManager.setCallback(this);
+        assetBundleManager.setDurability(downloadDurability);
+
+        storageManager = new StorageManager(assetBundleManager, trash, versionsDirectory, servingDirectory, storageQuotaBytes, new StorageManager.Callback() {
+            @Override
+            public Set<String> getProtectedVersions() {
+                Set<String> versions = new HashSet<String>();
+                addVersion(versions, assetBundleManager.initialAssetBundle);
+                addVersion(versions, currentAssetBundle);
+                addVersion(versions, pendingAssetBundle);
+                if (configuration.getLastKnownGoodVersion() != null) {
+                    versions.add(configuration.getLastKnownGoodVersion());
+                }
+                if (configuration.getLastDownloadedVersion() != null) {
+                    versions.add(configuration.getLastDownloadedVersion());
+                }
+                return versions;
+            }
+
+            private void addVersion(Set<String> versions, AssetBundle assetBundle) {
+                if (assetBundle != null) {
+                    versions.add(assetBundle.getVersion());
+                }
+            }
+
+            @Override
+            public Set<String> getBlacklistedVersions() {
+                return configuration.getBlacklistedVersions();
+            }
+        });
 
         String lastDownloadedVersion = configuration.getLastDownloadedVersion();
         if (lastDownloadedVersion != null) {
@@ -358,12 +526,43 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         pendingAssetBundle = null;
     }
 
+    private AssetBundle loadInitialAssetBundle(ResourceApi resourceApi, String path) {
+        try {
+            AssetBundle assetBundle = new AssetBundle(resourceApi, Uri.parse(path));
+            Log.i(LOG_TAG, "✅ Initial bundle loaded from " + path + " - version: " + assetBundle.getVersion());
+            return assetBundle;
+        } catch (Exception e) {
+            Log.d(LOG_TAG, "❌ Could not load initial bundle from " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Logs the available assets, to help diagnose a missing initial bundle */
+    private void logTopLevelAssets() {
+        try {
+            String[] topLevelAssets = assetManager.list("");
+            Log.d(LOG_TAG, "Top-level assets: " + java.util.Arrays.toString(topLevelAssets));
+
+            // Check if public or www directories exist
+            for (String asset : topLevelAssets) {
+                if (asset.equals("public") || asset.equals("www")) {
+                    String[] subAssets = assetManager.list(asset);
+                    Log.d(LOG_TAG, asset + " directory contents: " + java.util.Arrays.toString(subAssets));
+                }
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not list assets: " + e.getMessage());
+        }
+    }
+
     /** Called before page reload */
     private void onReset() {
         if (currentAssetBundle != null) {
-            configuration.setAppId(currentAssetBundle.getAppId());
-            configuration.setRootUrlString(currentAssetBundle.getRootUrlString());
-            configuration.setCordovaCompatibilityVersion(currentAssetBundle.getCordovaCompatibilityVersion());
+            configuration.edit()
+                    .setAppId(currentAssetBundle.getAppId())
+                    .setRootUrlString(currentAssetBundle.getRootUrlString())
+                    .setCordovaCompatibilityVersion(currentAssetBundle.getCordovaCompatibilityVersion())
+                    .apply();
         }
 
         if (switchedToNewVersion) {
@@ -399,7 +598,7 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
     @PluginMethod
     public void checkForUpdates(final PluginCall call) {
         Log.i(LOG_TAG, "checkForUpdates() called from JavaScript");
-        if (currentAssetBundle == null) {
+        if (!awaitInitialization() || currentAssetBundle == null) {
             Log.e(LOG_TAG, "Current asset bundle is null");
             call.reject("Plugin not initialized");
             return;
@@ -423,7 +622,7 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
     @PluginMethod
     public void startupDidComplete(final PluginCall call) {
         Log.i(LOG_TAG, "startupDidComplete() called from JavaScript");
-        if (currentAssetBundle == null) {
+        if (!awaitInitialization() || currentAssetBundle == null) {
             Log.e(LOG_TAG, "Current asset bundle is null");
             call.reject("Plugin not initialized");
             return;
@@ -436,10 +635,13 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         // If startup completed successfully, we consider a version good
         configuration.setLastKnownGoodVersion(currentAssetBundle.getVersion());
 
+        // Versions we no longer need are removed in the background, once over the quota
+        storageManager.scheduleMaintenance(0);
+
         new Thread(new Runnable() {
             @Override
             public void run() {
-                assetBundleManager.removeAllDownloadedAssetBundlesExceptForVersion(currentAssetBundle.getVersion());
+                configuration.flush();
                 call.resolve();
             }
         }).start();
@@ -448,7 +650,7 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
     @PluginMethod
     public void getCurrentVersion(PluginCall call) {
         Log.d(LOG_TAG, "getCurrentVersion() called from JavaScript");
-        if (currentAssetBundle == null) {
+        if (!awaitInitialization() || currentAssetBundle == null) {
             Log.e(LOG_TAG, "Current asset bundle is null");
             call.reject("Plugin not initialized");
             return;
@@ -470,47 +672,25 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         call.resolve(ret);
     }
 
+    @PluginMethod
+    public void getDownloadStatus(PluginCall call) {
+        Log.d(LOG_TAG, "getDownloadStatus() called from JavaScript");
+
+        DownloadProgress progress = assetBundleManager != null ? assetBundleManager.getDownloadProgress() : null;
+        call.resolve(downloadStatusForProgress(progress));
+    }
+
     @PluginMethod
     public void reload(final PluginCall call) {
         Log.i(LOG_TAG, "reload() called from JavaScript");
         
         if (pendingAssetBundle != null) {
             Log.i(LOG_TAG, "Reloading with pending version " + pendingAssetBundle.getVersion());
-            
-            try {
-                // Organize the pending bundle for serving
-                File bundleServingDirectory = new File(servingDirectory, pendingAssetBundle.getVersion());
-                
-                // Remove existing serving directory for this version
-                if (bundleServingDirectory.exists()) {
-                    if (!IOUtils.deleteRecursively(bundleServingDirectory)) {
-                        Log.w(LOG_TAG, "Could not delete existing serving directory");
-                    }
-                }
 
-                // Organize the bundle (this injects the WebAppLocalServer shim)
-                BundleOrganizer.organizeBundle(pendingAssetBundle, bundleServingDirectory, assetManager);
-                
-                // Make atomic switch
-                currentAssetBundle = pendingAssetBundle;
-                pendingAssetBundle = null;
-                switchedToNewVersion = true;
-                
-                // Reload the WebView
-                getActivity().runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        onReset();
-                        if (bridge != null && bridge.getWebView() != null) {
-                            bridge.getWebView().reload();
-                        }
-                        call.resolve();
-                    }
-                });
-            } catch (WebAppException e) {
-                Log.e(LOG_TAG, "Could not organize pending bundle", e);
-                call.reject("Could not organize pending bundle: " + e.getMessage());
-            }
+            // Make sure the downloaded version is on disk before we switch to it
+            configuration.flush();
+            
+            switchWhenStaged(pendingAssetBundle, call);
         } else {
             Log.w(LOG_TAG, "No pending version to reload");
             call.resolve();
@@ -524,6 +704,7 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
     private void revertToLastKnownGoodVersion() {
         // Blacklist the current version, so we don't update to it again right away
         configuration.addBlacklistedVersion(currentAssetBundle.getVersion());
+        configuration.flush();
 
         // If there is a last known good version and we can load the bundle, revert to it
         String lastKnownGoodVersion = configuration.getLastKnownGoodVersion();
@@ -557,14 +738,104 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         }
     }
 
+    /**
+     * Organizes a bundle for serving in the background, ahead of switching to it
+     */
+    private void stageAssetBundle(final AssetBundle assetBundle) {
+        organizerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Log.i(LOG_TAG, "Staging version " + assetBundle.getVersion() + " for serving");
+                    // This injects the WebAppLocalServer shim
+                    organizeForServing(assetBundle);
+                } catch (WebAppException e) {
+                    // Switching to the bundle will try again
+                    Log.w(LOG_TAG, "Could not stage version " + assetBundle.getVersion(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Switches to a bundle once it has been staged. As the organizer runs one
+     * task at a time, this waits for staging that is still in progress rather
+     * than organizing the bundle a second time.
+     * @param call resolved after the switch, or rejected if the bundle could not be organized (may be null)
+     */
+    private void switchWhenStaged(final AssetBundle assetBundle, final PluginCall call) {
+        organizerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    organizeForServing(assetBundle);
+                    storageManager.markUsed(assetBundle.getVersion());
+                } catch (WebAppException e) {
+                    Log.e(LOG_TAG, "Could not organize pending bundle", e);
+                    if (call != null) {
+                        call.reject("Could not organize pending bundle: " + e.getMessage());
+                    }
+                    return;
+                }
+
+                // Make atomic switch and reload the WebView
+                getActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        switchToAssetBundle(assetBundle);
+                        if (call != null) {
+                            call.resolve();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Makes an organized bundle the current one and reloads the WebView
+     * Must be called on the UI thread
+     */
+    private void switchToAssetBundle(AssetBundle assetBundle) {
+        currentAssetBundle = assetBundle;
+        if (pendingAssetBundle == assetBundle) {
+            pendingAssetBundle = null;
+        }
+        switchedToNewVersion = true;
+
+        onReset();
+        if (bridge != null && bridge.getWebView() != null) {
+            bridge.getWebView().reload();
+        }
+    }
+
+    private static JSObject downloadStatusForProgress(DownloadProgress progress) {
+        JSObject status = new JSObject();
+        if (progress == null) {
+            status.put("state", "idle");
+            return status;
+        }
+
+        status.put("state", progress.getState().name().toLowerCase(Locale.ROOT));
+        status.put("version", progress.getVersion());
+        status.put("assetsDone", progress.getAssetsDone());
+        status.put("assetsTotal", progress.getAssetsTotal());
+        status.put("bytesDone", progress.getBytesDone());
+        status.put("bytesTotal", progress.getBytesTotal());
+        status.put("reusedAssets", progress.getReusedAssets());
+        status.put("reusedBytes", progress.getReusedBytes());
+        status.put("throughput", progress.getThroughput());
+        status.put("eta", progress.getEstimatedTimeRemaining());
+        status.put("elapsed", progress.getElapsedTime());
+        return status;
+    }
+
     //endregion
 
     //region AssetBundleManager.Callback
 
     @Override
-    public boolean shouldDownloadBundleForManifest(AssetManifest manifest) {
-        final String version = manifest.version;
-
+    public boolean shouldDownloadBundleForVersion(String version) {
         // No need to redownload the current version
         if (currentAssetBundle.getVersion().equals(version)) {
             Log.i(LOG_TAG, "Skipping downloading current version: " + version);
@@ -598,6 +869,10 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         Log.i(LOG_TAG, "Finished downloading " + assetBundle.getVersion());
         configuration.setLastDownloadedVersion(assetBundle.getVersion());
         pendingAssetBundle = assetBundle;
+
+        // Organize the new version now, so reloading does not have to wait for it
+        stageAssetBundle(assetBundle);
+        storageManager.scheduleMaintenance(STORAGE_MAINTENANCE_DELAY_MS);
         
         // Notify JavaScript of new version ready
         notifyListeners("newVersionReady", new JSObject().put("version", assetBundle.getVersion()));
@@ -609,45 +884,17 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
         // ============================================================================
         Log.w(LOG_TAG, "⚠️ TEMPORARY: Auto-reloading with new version " + assetBundle.getVersion());
         
-        getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    // Organize the pending bundle for serving
-                    File bundleServingDirectory = new File(servingDirectory, pendingAssetBundle.getVersion());
-                    
-                    // Remove existing serving directory for this version
-                    if (bundleServingDirectory.exists()) {
-                        if (!IOUtils.deleteRecursively(bundleServingDirectory)) {
-                            Log.w(LOG_TAG, "Could not delete existing serving directory");
-                        }
-                    }
-
-                    // Organize the bundle (this injects the WebAppLocalServer shim)
-                    BundleOrganizer.organizeBundle(pendingAssetBundle, bundleServingDirectory, assetManager);
-                    
-                    // Make atomic switch
-                    currentAssetBundle = pendingAssetBundle;
-                    pendingAssetBundle = null;
-                    switchedToNewVersion = true;
-                    
-                    Log.i(LOG_TAG, "⚠️ TEMPORARY: Reloading WebView with new version");
-                    
-                    // Reload the WebView
-                    onReset();
-                    if (bridge != null && bridge.getWebView() != null) {
-                        bridge.getWebView().reload();
-                    }
-                } catch (WebAppException e) {
-                    Log.e(LOG_TAG, "Could not organize pending bundle for auto-reload", e);
-                }
-            }
-        });
+        switchWhenStaged(assetBundle, null);
         // ============================================================================
         // END TEMPORARY AUTO-RELOAD CODE
         // ============================================================================
     }
 
+    @Override
+    public void onDownloadProgress(DownloadProgress progress) {
+        notifyListeners("downloadProgress", downloadStatusForProgress(progress));
+    }
+
     @Override
     public void onError(Throwable cause) {
         Log.w(LOG_TAG, "Download failure", cause);
@@ -663,6 +910,23 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
 
     private void initializeResourceHandlers() {
         Log.i(LOG_TAG, "🔧 Initializing resource handlers...");
+
+        // Serve the initial bundle from the APK, if the build organized it
+        resourceHandlers.add(new WebResourceHandler() {
+            @Override
+            public Uri remapUri(Uri uri) {
+                if (!isPreorganized(currentAssetBundle)) return null;
+
+                String path = uri.getPath();
+                if (path == null) return null;
+
+                String assetPath = preorganizedBundle.assetPathForUrlPath(path);
+                if (assetPath == null) return null;
+
+                Log.i(LOG_TAG, "Handler 0: ✅ Serving from pre-organized bundle: " + path);
+                return Uri.parse("file:///android_asset/" + assetPath);
+            }
+        });
         
         // Serve files from the organized bundle directory (includes injected shim)
         resourceHandlers.add(new WebResourceHandler() {
@@ -816,6 +1080,10 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
 
                 // CRITICAL FIX: Serve index.html from the ORGANIZED bundle directory
                 // This ensures the WebAppLocalServer shim is included
+                if (isPreorganized(currentAssetBundle)) {
+                    Log.i(LOG_TAG, "Handler #4: ✅ Serving pre-organized index.html as fallback for SPA route: " + path);
+                    return Uri.parse("file:///android_asset/" + preorganizedBundle.assetPathForUrlPath("/"));
+                }
                 File bundleServingDir = new File(servingDirectory, currentAssetBundle.getVersion());
                 File indexHtml = new File(bundleServingDir, "index.html");
                 
@@ -840,6 +1108,11 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
     @Nullable
     public WebResourceResponse handleRequest(@NonNull String path) {
         Log.d(LOG_TAG, "🔍 handleRequest called with path: " + path);
+
+        // Requests can arrive before background initialization has finished
+        if (!awaitInitialization()) {
+            return null;
+        }
         
         Uri requestUri = Uri.parse("/" + path);
         Uri remappedUri = null;
@@ -861,8 +1134,13 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
                 ResourceApi resourceApi = new ResourceApi(assetManager);
                 ResourceApi.OpenForReadResult result = resourceApi.openForRead(remappedUri, true);
                 if (result.inputStream != null) {
-                    Log.i(LOG_TAG, "  ✅ Returning response for: " + path + " (mime: " + result.mimeType + ")");
-                    return new WebResourceResponse(result.mimeType, "utf-8", result.inputStream);
+                    // The build records content types for the routes of a pre-organized bundle
+                    String mimeType = isPreorganized(currentAssetBundle) ? preorganizedBundle.contentTypeForUrlPath(requestUri.getPath()) : null;
+                    if (mimeType == null) {
+                        mimeType = result.mimeType;
+                    }
+                    Log.i(LOG_TAG, "  ✅ Returning response for: " + path + " (mime: " + mimeType + ")");
+                    return new WebResourceResponse(mimeType, "utf-8", result.inputStream);
                 }
             } catch (IOException e) {
                 Log.e(LOG_TAG, "  ❌ Error opening resource: " + remappedUri, e);
@@ -903,6 +1181,10 @@ public class CapacitorMeteorWebAppPlugin extends Plugin implements AssetBundleMa
 
         Log.d(LOG_TAG, "🔍 Request: " + uri.toString());
 
+        if (!awaitInitialization()) {
+            return null;
+        }
+
         Uri remappedUri = null;
         for (WebResourceHandler handler : resourceHandlers) {
             remappedUri = handler.remapUri(uri);
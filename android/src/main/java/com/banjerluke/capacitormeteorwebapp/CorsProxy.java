@@ -0,0 +1,629 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Proxies the WebView's requests to external servers and injects CORS headers
+ * into the responses, because Android's WebView enforces CORS for every
+ * cross-origin request, whatever the scheme the app is served from.
+ *
+ * Call {@link #handleRequest} from WebViewClient.shouldInterceptRequest. All
+ * proxies share one OkHttpClient, so connections (HTTP/2 where the server
+ * supports it) are pooled and reused across requests instead of being set up
+ * for every request. The response body is streamed to the WebView as it
+ * arrives.
+ *
+ * Set-Cookie headers cannot be passed through, because WebResourceResponse
+ * takes one value per header and the WebView ignores cookies set by
+ * intercepted responses. Instead they are stored in the WebView's
+ * CookieManager, including those of redirects, and its cookies are sent with
+ * proxied requests. Other multi-valued headers are joined with commas.
+ *
+ * GET responses from allowed hosts can be kept in a disk cache, which
+ * follows their Cache-Control, ETag and Last-Modified headers and revalidates
+ * stale entries with conditional requests. Without it, every request goes to
+ * the network, because the WebView's own cache does not apply to intercepted
+ * requests.
+ *
+ * Identical GETs made at the same time, e.g. for an avatar that appears
+ * several times in a list, share one upstream fetch, and the body is teed to
+ * each of them through a bounded buffer.
+ *
+ * CORS preflight requests are answered locally with the configured
+ * Access-Control headers, without a round trip to the server.
+ *
+ * WebResourceRequest does not expose request bodies, so methods that require
+ * one are sent with an empty body.
+ */
+public class CorsProxy {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    private static final long DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    private static final long DEFAULT_READ_TIMEOUT_MS = 10000;
+
+    private static final String DEFAULT_ORIGIN = "capacitor://localhost";
+    private static final String DEFAULT_ALLOW_METHODS = "GET, POST, PUT, DELETE, OPTIONS, PATCH";
+    private static final String DEFAULT_ALLOW_HEADERS = "Content-Type, Authorization, X-Requested-With, Accept, Origin";
+    private static final long DEFAULT_MAX_AGE_SECONDS = 86400;
+
+    /** How far the fastest reader of a shared response may get ahead of the slowest */
+    private static final int COALESCING_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Request headers that are left out when deciding whether two GETs are
+     * identical. They differ between requests for the same resource but rarely
+     * change the response; if the response varies by one, it is not shared.
+     */
+    private static final Set<String> NON_COALESCING_HEADERS = new HashSet<String>(Arrays.asList("referer"));
+
+    private static OkHttpClient sharedClient;
+
+    /** OkHttp allows one open Cache per directory, so proxies share them by canonical path */
+    private static final Map<String, Cache> sharedCaches = new HashMap<String, Cache>();
+
+    private static synchronized OkHttpClient getSharedClient() {
+        if (sharedClient == null) {
+            sharedClient = new OkHttpClient.Builder()
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectionPool(new ConnectionPool(8, 5, TimeUnit.MINUTES))
+                    .addNetworkInterceptor(new CookieInterceptor())
+                    .build();
+        }
+        return sharedClient;
+    }
+
+    private static synchronized Cache getSharedCache(File directory, long maxSizeBytes) {
+        String path;
+        try {
+            path = directory.getCanonicalPath();
+        } catch (IOException e) {
+            path = directory.getAbsolutePath();
+        }
+
+        Cache cache = sharedCaches.get(path);
+        if (cache == null) {
+            cache = new Cache(new File(path), maxSizeBytes);
+            sharedCaches.put(path, cache);
+        } else if (cache.maxSize() != maxSizeBytes) {
+            Log.w(LOG_TAG, "[CORS Proxy] Cache in " + path + " is already open with a maximum size of " + cache.maxSize() + " bytes");
+        }
+        return cache;
+    }
+
+    /** Connect and read timeouts, in milliseconds */
+    private static final class Timeouts {
+        final long connectMs;
+        final long readMs;
+
+        Timeouts(long connectMs, long readMs) {
+            this.connectMs = connectMs;
+            this.readMs = readMs;
+        }
+    }
+
+    public static final class Builder {
+        private Timeouts defaultTimeouts = new Timeouts(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+        private final Map<String, Timeouts> hostTimeouts = new HashMap<String, Timeouts>();
+        private String allowMethods = DEFAULT_ALLOW_METHODS;
+        private String allowHeaders = DEFAULT_ALLOW_HEADERS;
+        private long maxAgeSeconds = DEFAULT_MAX_AGE_SECONDS;
+        private File cacheDirectory;
+        private long cacheMaxSizeBytes;
+        private final Set<String> cacheHosts = new HashSet<String>();
+
+        /** Sets the timeouts for hosts that have none of their own */
+        public Builder timeouts(long connectMs, long readMs) {
+            defaultTimeouts = new Timeouts(connectMs, readMs);
+            return this;
+        }
+
+        /** Sets the timeouts for one host, e.g. a slow API or a long-polling endpoint */
+        public Builder hostTimeouts(String host, long connectMs, long readMs) {
+            hostTimeouts.put(host.toLowerCase(Locale.ROOT), new Timeouts(connectMs, readMs));
+            return this;
+        }
+
+        /** Sets Access-Control-Allow-Methods, e.g. "GET, POST" */
+        public Builder allowMethods(String allowMethods) {
+            this.allowMethods = allowMethods;
+            return this;
+        }
+
+        /** Sets Access-Control-Allow-Headers, e.g. "Content-Type, Authorization" */
+        public Builder allowHeaders(String allowHeaders) {
+            this.allowHeaders = allowHeaders;
+            return this;
+        }
+
+        /** Sets Access-Control-Max-Age, how long the WebView may cache a preflight result */
+        public Builder maxAgeSeconds(long maxAgeSeconds) {
+            this.maxAgeSeconds = maxAgeSeconds;
+            return this;
+        }
+
+        /**
+         * Caches GET responses on disk, as their Cache-Control, ETag and
+         * Last-Modified headers allow, but only for the hosts passed to
+         * {@link #cacheHost}. Proxies built with the same directory share one
+         * cache for the life of the process, so a proxy may be built again
+         * whenever the activity is recreated. The first maximum size wins.
+         */
+        public Builder cache(File directory, long maxSizeBytes) {
+            this.cacheDirectory = directory;
+            this.cacheMaxSizeBytes = maxSizeBytes;
+            return this;
+        }
+
+        /** Allows responses from a host, e.g. an avatar CDN, to be cached */
+        public Builder cacheHost(String host) {
+            cacheHosts.add(host.toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        public CorsProxy build() {
+            return new CorsProxy(this);
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    /** Same as httpClient but with the disk cache, or null if there is none */
+    private final OkHttpClient cachingHttpClient;
+    private final Set<String> cacheHosts;
+    private final String allowMethods;
+    private final String allowHeaders;
+    private final String maxAgeSeconds;
+    private final long stallTimeoutMs;
+
+    /** GETs waiting for their response headers, by coalescing key */
+    private final Map<String, Flight> flights = new HashMap<String, Flight>();
+
+    private CorsProxy(Builder builder) {
+        allowMethods = builder.allowMethods;
+        allowHeaders = builder.allowHeaders;
+        maxAgeSeconds = Long.toString(builder.maxAgeSeconds);
+
+        final Timeouts defaultTimeouts = builder.defaultTimeouts;
+        // A reader of a shared response that stops reading for this long is dropped
+        stallTimeoutMs = defaultTimeouts.readMs;
+        final Map<String, Timeouts> hostTimeouts = new HashMap<String, Timeouts>(builder.hostTimeouts);
+
+        // Derived clients share the connection pool and dispatcher of the shared client
+        httpClient = getSharedClient().newBuilder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        Timeouts timeouts = hostTimeouts.get(chain.request().url().host());
+                        if (timeouts == null) {
+                            timeouts = defaultTimeouts;
+                        }
+                        return chain
+                                .withConnectTimeout((int) timeouts.connectMs, TimeUnit.MILLISECONDS)
+                                .withReadTimeout((int) timeouts.readMs, TimeUnit.MILLISECONDS)
+                                .proceed(chain.request());
+                    }
+                })
+                .build();
+
+        cacheHosts = new HashSet<String>(builder.cacheHosts);
+        if (builder.cacheDirectory != null && !cacheHosts.isEmpty()) {
+            cachingHttpClient = httpClient.newBuilder()
+                    .cache(getSharedCache(builder.cacheDirectory, builder.cacheMaxSizeBytes))
+                    .build();
+        } else {
+            cachingHttpClient = null;
+        }
+    }
+
+    /** @return a proxy with the default timeouts */
+    public static CorsProxy create() {
+        return new Builder().build();
+    }
+
+    /** @return true for requests to external HTTP and HTTPS servers, which need the proxy */
+    public boolean shouldProxy(WebResourceRequest request) {
+        Uri url = request.getUrl();
+        if (url == null) return false;
+
+        String scheme = url.getScheme();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) return false;
+
+        String host = url.getHost();
+        return host != null && !host.equals("localhost") && !host.equals("127.0.0.1");
+    }
+
+    /**
+     * Proxies an external request and injects CORS headers into its response.
+     * This blocks until the response headers arrive, so it must not be called
+     * on the UI thread.
+     * @return the response, or null if the request is not external or could
+     * not be proxied, so the WebView makes it itself
+     */
+    public WebResourceResponse handleRequest(WebResourceRequest request) {
+        if (!shouldProxy(request)) return null;
+
+        String url = request.getUrl().toString();
+
+        // The server's answer would be replaced with our CORS headers anyway
+        if (isPreflight(request)) {
+            Log.d(LOG_TAG, "[CORS Proxy] Answering preflight locally: " + url);
+            return buildPreflightResponse(request);
+        }
+
+        Log.d(LOG_TAG, "[CORS Proxy] Intercepting external request: " + url);
+
+        Request proxiedRequest;
+        try {
+            proxiedRequest = buildRequest(request);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "[CORS Proxy] ❌ Failed to proxy request: " + url, e);
+            return null;
+        }
+
+        if (proxiedRequest.method().equals("GET")) {
+            return fetchCoalesced(request, proxiedRequest);
+        }
+        return fetch(request, proxiedRequest);
+    }
+
+    private WebResourceResponse fetch(WebResourceRequest request, Request proxiedRequest) {
+        String url = proxiedRequest.url().toString();
+        Response response = null;
+        try {
+            response = clientFor(proxiedRequest).newCall(proxiedRequest).execute();
+            WebResourceResponse webResponse = buildResponse(request, response, response.body().byteStream());
+            logProxied(response, url);
+            return webResponse;
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "[CORS Proxy] ❌ Failed to proxy request: " + url, e);
+            if (response != null) {
+                response.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Fetches a GET request, sharing the upstream fetch with identical
+     * requests made while its response headers are on their way. The first
+     * request fetches; the others wait for it and then read the body through
+     * a {@link SharedBody}.
+     */
+    private WebResourceResponse fetchCoalesced(WebResourceRequest request, Request proxiedRequest) {
+        String key = coalescingKey(proxiedRequest);
+        Flight flight;
+        boolean isLeader;
+        synchronized (flights) {
+            flight = flights.get(key);
+            isLeader = flight == null;
+            if (isLeader) {
+                flight = new Flight();
+                flights.put(key, flight);
+            } else {
+                flight.waiterCount++;
+            }
+        }
+
+        if (isLeader) {
+            Response response = null;
+            Exception failure = null;
+            try {
+                response = clientFor(proxiedRequest).newCall(proxiedRequest).execute();
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } finally {
+                // No one can join once the headers are in, so the number of readers is final
+                synchronized (flights) {
+                    flights.remove(key);
+                }
+                flight.complete(response, failure, stallTimeoutMs);
+            }
+        } else {
+            Log.d(LOG_TAG, "[CORS Proxy] Sharing an identical request in flight: " + proxiedRequest.url());
+        }
+
+        String url = proxiedRequest.url().toString();
+        InputStream body = null;
+        try {
+            Response response = flight.await();
+            body = flight.takeBody();
+
+            // Only the leader's request headers were sent, so the others can only use
+            // the response if it does not vary by a header left out of the key
+            if (!isLeader && !isShareable(response)) {
+                body.close();
+                return fetch(request, proxiedRequest);
+            }
+
+            WebResourceResponse webResponse = buildResponse(request, response, body);
+            logProxied(response, url);
+            return webResponse;
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "[CORS Proxy] ❌ Failed to proxy request: " + url, e);
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException closeException) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /** @return the URL and the request headers, except for those left out of coalescing */
+    private static String coalescingKey(Request request) {
+        List<String> headerLines = new ArrayList<String>();
+        Headers headers = request.headers();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i).toLowerCase(Locale.ROOT);
+            if (NON_COALESCING_HEADERS.contains(name)) continue;
+            headerLines.add(name + ":" + headers.value(i));
+        }
+        Collections.sort(headerLines);
+
+        StringBuilder key = new StringBuilder(request.url().toString());
+        for (String headerLine : headerLines) {
+            key.append('\n').append(headerLine);
+        }
+        return key.toString();
+    }
+
+    /** @return false if the response varies by a header that was left out of the coalescing key */
+    private static boolean isShareable(Response response) {
+        for (String vary : response.headers("Vary")) {
+            for (String name : vary.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("*") || NON_COALESCING_HEADERS.contains(name)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static void logProxied(Response response, String url) {
+        if (response.networkResponse() == null) {
+            Log.d(LOG_TAG, "[CORS Proxy] ✅ Served from cache with CORS headers: " + url);
+        } else {
+            Log.d(LOG_TAG, "[CORS Proxy] ✅ Proxied request with CORS headers: " + url);
+        }
+    }
+
+    /** One upstream GET and the requests waiting for it */
+    private static final class Flight {
+        /** Guarded by the flights map until the flight is removed from it */
+        int waiterCount = 1;
+
+        private boolean completed;
+        private Response response;
+        private Exception failure;
+        private List<InputStream> bodies;
+
+        synchronized void complete(Response response, Exception failure, long stallTimeoutMs) {
+            this.response = response;
+            this.failure = failure;
+            if (response != null) {
+                InputStream source = response.body().byteStream();
+                if (waiterCount == 1) {
+                    bodies = new ArrayList<InputStream>(Collections.singletonList(source));
+                } else {
+                    bodies = new SharedBody(source, COALESCING_BUFFER_SIZE, waiterCount, stallTimeoutMs).getReaders();
+                }
+            }
+            completed = true;
+            notifyAll();
+        }
+
+        synchronized Response await() throws IOException {
+            while (!completed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a shared request");
+                }
+            }
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure != null) throw new IOException("Shared request failed", failure);
+            return response;
+        }
+
+        /** @return a body stream of its own for each waiter */
+        synchronized InputStream takeBody() {
+            return bodies.remove(bodies.size() - 1);
+        }
+    }
+
+    private OkHttpClient clientFor(Request request) {
+        if (cachingHttpClient != null && request.method().equals("GET") && cacheHosts.contains(request.url().host())) {
+            return cachingHttpClient;
+        }
+        return httpClient;
+    }
+
+    private static Request buildRequest(WebResourceRequest request) {
+        Request.Builder builder = new Request.Builder().url(request.getUrl().toString());
+
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) continue;
+                // WebResourceResponse cannot represent a 304, so let the server send the full response.
+                // The disk cache makes its own conditional requests for what it has stored.
+                if (entry.getKey().equalsIgnoreCase("If-None-Match") || entry.getKey().equalsIgnoreCase("If-Modified-Since")) continue;
+                builder.header(entry.getKey(), entry.getValue());
+            }
+        }
+
+        String method = request.getMethod().toUpperCase(Locale.ROOT);
+        builder.method(method, requiresRequestBody(method) ? RequestBody.create(new byte[0], null) : null);
+        return builder.build();
+    }
+
+    private static boolean requiresRequestBody(String method) {
+        return method.equals("POST") || method.equals("PUT") || method.equals("PATCH")
+                || method.equals("PROPPATCH") || method.equals("REPORT");
+    }
+
+    private static boolean isPreflight(WebResourceRequest request) {
+        return "OPTIONS".equalsIgnoreCase(request.getMethod()) && getRequestHeader(request, "Access-Control-Request-Method") != null;
+    }
+
+    private WebResourceResponse buildPreflightResponse(WebResourceRequest request) {
+        Map<String, String> responseHeaders = new LinkedHashMap<String, String>();
+        putCorsHeaders(request, responseHeaders);
+        responseHeaders.put("Content-Length", "0");
+        return new WebResourceResponse("text/plain", null, 204, "No Content", responseHeaders,
+                new ByteArrayInputStream(new byte[0]));
+    }
+
+    private WebResourceResponse buildResponse(WebResourceRequest request, Response response, InputStream body) {
+        Map<String, String> responseHeaders = new LinkedHashMap<String, String>();
+        Headers headers = response.headers();
+        for (String name : headers.names()) {
+            // Stored in the CookieManager by CookieInterceptor
+            if (name.equalsIgnoreCase("Set-Cookie")) continue;
+            responseHeaders.put(name, joinValues(headers.values(name)));
+        }
+        putCorsHeaders(request, responseHeaders);
+
+        // OkHttp only decodes the body if it asked for gzip itself. If the WebView
+        // sent its own Accept-Encoding, the body and its Content-Encoding pass through.
+        MediaType mediaType = response.body().contentType();
+        String mimeType = mediaType != null ? mediaType.type() + "/" + mediaType.subtype() : "text/plain";
+        String charset = mediaType != null && mediaType.charset() != null ? mediaType.charset().name() : null;
+
+        return new WebResourceResponse(mimeType, charset, response.code(), reasonPhrase(response),
+                responseHeaders, body);
+    }
+
+    /**
+     * The response must name the requesting origin rather than '*', because
+     * requests with credentials do not accept a wildcard.
+     * See https://developer.mozilla.org/en-US/docs/Web/HTTP/CORS#credentialed_requests
+     */
+    private void putCorsHeaders(WebResourceRequest request, Map<String, String> responseHeaders) {
+        String origin = getRequestHeader(request, "Origin");
+        if (origin == null || origin.isEmpty()) {
+            origin = DEFAULT_ORIGIN;
+        }
+
+        // Drop whatever CORS headers the server sent, in any letter case, so ours are the only ones
+        String vary = null;
+        Iterator<Map.Entry<String, String>> iterator = responseHeaders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            String name = entry.getKey().toLowerCase(Locale.ROOT);
+            if (name.equals("vary")) {
+                vary = entry.getValue();
+                iterator.remove();
+            } else if (name.startsWith("access-control-")) {
+                iterator.remove();
+            }
+        }
+
+        responseHeaders.put("Access-Control-Allow-Origin", origin);
+        responseHeaders.put("Access-Control-Allow-Methods", allowMethods);
+        responseHeaders.put("Access-Control-Allow-Headers", allowHeaders);
+        responseHeaders.put("Access-Control-Allow-Credentials", "true");
+        responseHeaders.put("Access-Control-Max-Age", maxAgeSeconds);
+        // The response varies by origin, on top of whatever it varies by upstream
+        responseHeaders.put("Vary", vary != null && !vary.isEmpty() ? vary + ", Origin" : "Origin");
+    }
+
+    /** @return the value of a request header, matching its name in any letter case */
+    private static String getRequestHeader(WebResourceRequest request, String name) {
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        if (requestHeaders == null) return null;
+
+        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+
+    private static String joinValues(List<String> values) {
+        if (values.size() == 1) return values.get(0);
+
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) joined.append(", ");
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+
+    /** HTTP/2 responses have no reason phrase, but WebResourceResponse requires one */
+    private static String reasonPhrase(Response response) {
+        String message = response.message();
+        if (message != null && !message.isEmpty()) return message;
+
+        int code = response.code();
+        if (code >= 200 && code < 300) return "OK";
+        if (code >= 400 && code < 500) return "Client Error";
+        if (code >= 500) return "Server Error";
+        return "Unknown";
+    }
+
+    /**
+     * Bridges OkHttp and the WebView's CookieManager: sends the WebView's
+     * cookies with every request, and stores every Set-Cookie value of every
+     * response, including redirects, so the WebView and later requests see them.
+     */
+    private static final class CookieInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            CookieManager cookieManager = CookieManager.getInstance();
+            Request request = chain.request();
+            String url = request.url().toString();
+
+            if (request.header("Cookie") == null) {
+                String cookies = cookieManager.getCookie(url);
+                if (cookies != null && !cookies.isEmpty()) {
+                    request = request.newBuilder().header("Cookie", cookies).build();
+                }
+            }
+
+            Response response = chain.proceed(request);
+
+            List<String> setCookies = response.headers("Set-Cookie");
+            if (!setCookies.isEmpty()) {
+                for (String setCookie : setCookies) {
+                    cookieManager.setCookie(url, setCookie);
+                }
+                cookieManager.flush();
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.os.SystemClock;
+
+/**
+ * Live telemetry for downloading an asset bundle: how many assets and bytes
+ * have been downloaded, how fast, and how much could be reused from
+ * previously downloaded bundles instead of the network.
+ *
+ * Counters are updated from OkHttp and I/O threads, so all access is synchronized.
+ */
+class DownloadProgress {
+    /** Minimum interval between progress reports, and between throughput samples */
+    private static final long REPORT_INTERVAL_MS = 250;
+
+    /** Weight of the latest sample in the smoothed throughput */
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    enum State {
+        DOWNLOADING,
+        FINISHED,
+        FAILED
+    }
+
+    private final String version;
+    private final long startTime;
+
+    private State state = State.DOWNLOADING;
+
+    private int assetsTotal;
+    private int assetsDone;
+    private long bytesTotal;
+    private long bytesDone;
+
+    private int reusedAssets;
+    private long reusedBytes;
+
+    private long sampleTime;
+    private long sampleBytes;
+    private double throughput = -1;
+
+    DownloadProgress(String version) {
+        this.version = version;
+        this.startTime = SystemClock.elapsedRealtime();
+        this.sampleTime = startTime;
+    }
+
+    synchronized void addReusedAsset(long size) {
+        reusedAssets++;
+        reusedBytes += size;
+    }
+
+    /** Adds an asset to download, with its expected size or -1 if unknown */
+    synchronized void addMissingAsset(long size) {
+        assetsTotal++;
+        if (size > 0) {
+            bytesTotal += size;
+        }
+    }
+
+    /** Accounts for the part of an asset's size that only became known from its response */
+    synchronized void addExpectedBytes(long size) {
+        bytesTotal += size;
+    }
+
+    synchronized void addBytesDone(long byteCount) {
+        bytesDone += byteCount;
+        // Never report more done than expected if the manifest sizes were off
+        if (bytesDone > bytesTotal) {
+            bytesTotal = bytesDone;
+        }
+    }
+
+    synchronized void addAssetDone() {
+        assetsDone++;
+    }
+
+    synchronized void setState(State state) {
+        this.state = state;
+        updateThroughput(SystemClock.elapsedRealtime(), true);
+    }
+
+    /**
+     * Takes a throughput sample if enough time has passed since the last one
+     * @return true if a new sample was taken, i.e. progress should be reported
+     */
+    synchronized boolean sample() {
+        return updateThroughput(SystemClock.elapsedRealtime(), false);
+    }
+
+    private boolean updateThroughput(long now, boolean force) {
+        long elapsed = now - sampleTime;
+        if (elapsed < REPORT_INTERVAL_MS && !force) return false;
+        if (elapsed <= 0) return true;
+
+        double currentThroughput = (bytesDone - sampleBytes) * 1000.0 / elapsed;
+        if (throughput < 0) {
+            throughput = currentThroughput;
+        } else {
+            throughput = THROUGHPUT_SMOOTHING * currentThroughput + (1 - THROUGHPUT_SMOOTHING) * throughput;
+        }
+        sampleTime = now;
+        sampleBytes = bytesDone;
+        return true;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized int getAssetsTotal() {
+        return assetsTotal;
+    }
+
+    synchronized int getAssetsDone() {
+        return assetsDone;
+    }
+
+    synchronized long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    synchronized long getBytesDone() {
+        return bytesDone;
+    }
+
+    synchronized int getReusedAssets() {
+        return reusedAssets;
+    }
+
+    synchronized long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    /** @return the smoothed throughput in bytes per second, or -1 before the first sample */
+    synchronized long getThroughput() {
+        return throughput < 0 ? -1 : Math.round(throughput);
+    }
+
+    /** @return the estimated time remaining in milliseconds, or -1 if unknown */
+    synchronized long getEstimatedTimeRemaining() {
+        if (state != State.DOWNLOADING) return 0;
+        if (throughput <= 0) return -1;
+        return Math.round((bytesTotal - bytesDone) * 1000.0 / throughput);
+    }
+
+    synchronized long getElapsedTime() {
+        return (state == State.DOWNLOADING ? SystemClock.elapsedRealtime() : sampleTime) - startTime;
+    }
+}
@@ -0,0 +1,336 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Transforms index.html on its way into a serving directory.
+ *
+ * The document is copied as bytes in a single pass. Every {@link Stage}
+ * contributes content that is inserted as the first thing inside
+ * <code>&lt;head&gt;</code>, so it runs before any Meteor code. Without a head
+ * tag it goes after <code>&lt;html&gt;</code>, and without either at the start
+ * of the document. Only the part of the document up to that point is buffered.
+ *
+ * When a cache directory is set, transformed documents are cached by a digest
+ * of their input bytes, and an index.html that has been transformed before is
+ * linked from the cache instead of being transformed again.
+ */
+final class HtmlTransformer {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    /** A step of the pipeline, contributing content to the start of head */
+    interface Stage {
+        void writeHeadContent(OutputStream output) throws IOException;
+    }
+
+    /** Opens the document to transform, once to digest it and once more if it is not cached */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * The CORS bypass and WebAppLocalServer shim scripts, read once. They live
+     * in a resource so meteor-assets.gradle can inject the same bytes at build time.
+     */
+    static final String SHIM_RESOURCE_NAME = "webapp-shim.html";
+    private static final byte[] SHIM_BYTES = readShim();
+
+    /**
+     * Injects the CORS bypass and the WebAppLocalServer compatibility shim.
+     * The CORS bypass allows cross-origin requests from the WebView.
+     */
+    static final Stage SHIM = new Stage() {
+        @Override
+        public void writeHeadContent(OutputStream output) throws IOException {
+            output.write(SHIM_BYTES);
+        }
+    };
+
+    private static final HtmlTransformer DEFAULT = new HtmlTransformer(Collections.singletonList(SHIM));
+
+    /**
+     * Version of the rules for where the head content goes, part of the head
+     * content digest. meteor-assets.gradle applies the same rules at build time
+     * and reads this constant, so bump it whenever {@link #transform} changes.
+     */
+    static final int INSERTION_RULES_VERSION = 1;
+
+    private static final byte[] HEAD = { 'h', 'e', 'a', 'd' };
+    private static final byte[] HTML = { 'h', 't', 'm', 'l' };
+    private static final byte[] BODY = { 'b', 'o', 'd', 'y' };
+
+    private static final int MAX_CACHE_ENTRIES = 8;
+    private static volatile File cacheDirectory;
+
+    private final byte[] headContent;
+    /**
+     * Identifies the head content and the insertion rules in cache keys, so
+     * changing either invalidates cached and organized documents
+     */
+    private final String headContentDigest;
+
+    HtmlTransformer(List<Stage> stages) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            for (Stage stage : stages) {
+                stage.writeHeadContent(output);
+            }
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        headContent = output.toByteArray();
+
+        MessageDigest digest = newSha1();
+        digest.update(("rules-" + INSERTION_RULES_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(headContent);
+        headContentDigest = hex(digest.digest()).substring(0, 16);
+    }
+
+    /** @return the transformer used for every bundle: the shim stage */
+    static HtmlTransformer getDefault() {
+        return DEFAULT;
+    }
+
+    /** @return the digest identifying the content this transformer inserts, as in cache keys */
+    String getHeadContentDigest() {
+        return headContentDigest;
+    }
+
+    private static byte[] readShim() {
+        InputStream input = HtmlTransformer.class.getResourceAsStream(SHIM_RESOURCE_NAME);
+        if (input == null) {
+            throw new IllegalStateException("Missing resource " + SHIM_RESOURCE_NAME);
+        }
+        try {
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+                return output.toByteArray();
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read resource " + SHIM_RESOURCE_NAME, e);
+        }
+    }
+
+    /** Enables caching transformed documents in a directory */
+    static void setCacheDirectory(File directory) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create index.html cache directory: " + directory);
+            return;
+        }
+        cacheDirectory = directory;
+    }
+
+    /**
+     * Writes the transformed document to a file, linking it from the cache when
+     * an input with the same bytes has been transformed before
+     */
+    void transformToFile(Source source, File targetFile) throws IOException {
+        File directory = cacheDirectory;
+        File cachedFile = directory != null ? new File(directory, digest(source) + "-" + headContentDigest) : null;
+
+        if (cachedFile != null && cachedFile.isFile()) {
+            try {
+                IOUtils.linkOrCopyFile(cachedFile, targetFile);
+                if (!cachedFile.setLastModified(System.currentTimeMillis())) {
+                    Log.d(LOG_TAG, "Could not touch cached index.html " + cachedFile.getName());
+                }
+                return;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not use cached index.html, transforming it again", e);
+            }
+        }
+
+        InputStream input = source.open();
+        try {
+            OutputStream output = new FileOutputStream(targetFile);
+            try {
+                transform(input, output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+
+        if (cachedFile != null) {
+            addToCache(targetFile, cachedFile);
+        }
+    }
+
+    /** Copies the document from input to output, inserting the head content */
+    void transform(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[8192];
+        int length = 0;
+        int scanned = 0;
+        int htmlEnd = -1;
+        int insertAt = -1;
+        boolean endOfInput = false;
+        boolean sawBody = false;
+
+        while (insertAt < 0) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                endOfInput = true;
+            } else {
+                length += read;
+            }
+
+            while (scanned < length) {
+                int tagStart = indexOf(buffer, (byte) '<', scanned, length);
+                if (tagStart < 0) {
+                    scanned = length;
+                    break;
+                }
+                int tagEnd = indexOf(buffer, (byte) '>', tagStart, length);
+                if (tagEnd < 0) {
+                    // Wait for the rest of the tag
+                    scanned = endOfInput ? length : tagStart;
+                    break;
+                }
+
+                if (isTag(buffer, tagStart, tagEnd, HEAD)) {
+                    insertAt = tagEnd + 1;
+                    break;
+                } else if (htmlEnd < 0 && isTag(buffer, tagStart, tagEnd, HTML)) {
+                    htmlEnd = tagEnd + 1;
+                } else if (isTag(buffer, tagStart, tagEnd, BODY)) {
+                    // There is no head, as it cannot follow the body
+                    sawBody = true;
+                    break;
+                }
+                scanned = tagEnd + 1;
+            }
+
+            if (insertAt < 0 && (endOfInput || sawBody)) {
+                // Without a head, inject after <html>, or else at the start of the document
+                insertAt = htmlEnd >= 0 ? htmlEnd : 0;
+            }
+        }
+
+        output.write(buffer, 0, insertAt);
+        output.write(headContent);
+        output.write(buffer, insertAt, length - insertAt);
+
+        if (!endOfInput) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static int indexOf(byte[] buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) return i;
+        }
+        return -1;
+    }
+
+    /** @return true if the tag between start and end is an opening tag with the (lower case) name */
+    private static boolean isTag(byte[] buffer, int start, int end, byte[] name) {
+        int nameEnd = start + 1 + name.length;
+        if (nameEnd > end) return false;
+
+        for (int i = 0; i < name.length; i++) {
+            int b = buffer[start + 1 + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != name[i]) return false;
+        }
+
+        // Make sure this is not e.g. <header>
+        byte next = buffer[nameEnd];
+        return next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\n' || next == '\r' || next == '\f';
+    }
+
+    private static void addToCache(File transformedFile, File cachedFile) {
+        File temporaryFile = new File(cachedFile.getParentFile(), "." + cachedFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            IOUtils.linkOrCopyFile(transformedFile, temporaryFile);
+            if (!temporaryFile.renameTo(cachedFile)) {
+                throw new IOException("Could not rename " + temporaryFile);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not cache transformed index.html", e);
+            temporaryFile.delete();
+            return;
+        }
+
+        pruneCache(cachedFile.getParentFile());
+    }
+
+    /** Keeps the most recently used entries */
+    private static void pruneCache(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_CACHE_ENTRIES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        for (int i = MAX_CACHE_ENTRIES; i < files.length; i++) {
+            if (!files[i].getName().startsWith(".") && !files[i].delete()) {
+                Log.w(LOG_TAG, "Could not delete cached index.html " + files[i].getName());
+            }
+        }
+    }
+
+    /** @return the SHA-1 of the document, which is small enough that reading it twice on a miss is cheap */
+    private static String digest(Source source) throws IOException {
+        MessageDigest digest = newSha1();
+        InputStream input = source.open();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.ROOT, "%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small shared thread pool for file system work that benefits from running
+ * in parallel, such as linking or copying many small files.
+ *
+ * Tasks must not call {@link #runAll} themselves, because waiting on the
+ * pool from inside the pool can exhaust its threads.
+ */
+final class IOExecutor {
+    private static final int POOL_SIZE = 4;
+
+    interface Task {
+        void run() throws IOException;
+    }
+
+    private static ExecutorService executor;
+
+    private IOExecutor() {
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MeteorWebApp-IO-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the tasks on the pool and waits for all of them to finish, even
+     * after a failure, so no task is still touching files when this returns
+     * @throws IOException the first failure of any task
+     */
+    static void runAll(List<Task> tasks) throws IOException {
+        if (tasks.size() <= 1) {
+            for (Task task : tasks) {
+                task.run();
+            }
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+        for (final Task task : tasks) {
+            futures.add(getExecutor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    task.run();
+                    return null;
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    // Keep waiting, the caller may delete files the remaining tasks are writing
+                    interrupted = true;
+                    continue;
+                }
+                break;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+        if (interrupted) {
+            throw new InterruptedIOException("Interrupted while waiting for file operations");
+        }
+    }
+}
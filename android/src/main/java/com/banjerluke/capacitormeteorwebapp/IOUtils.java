@@ -1,10 +1,20 @@
 package com.banjerluke.capacitormeteorwebapp;
 
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import okio.BufferedSink;
 import okio.Okio;
@@ -40,6 +50,72 @@ class IOUtils {
         return file;
     }
 
+    /**
+     * Writes the source to the file, preallocating the expected length when it
+     * is known, and optionally syncing the file to disk before closing it
+     */
+    public static File writeToFile(Source source, File file, long expectedLength, boolean sync) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        BufferedSink sink = null;
+        try {
+            if (expectedLength > 0) {
+                preallocate(outputStream.getFD(), expectedLength);
+            }
+
+            sink = Okio.buffer(Okio.sink(outputStream));
+            long length = sink.writeAll(source);
+            sink.flush();
+
+            // Don't leave preallocated space behind if we received less than expected
+            if (length < expectedLength) {
+                outputStream.getChannel().truncate(length);
+            }
+            if (sync) {
+                outputStream.getFD().sync();
+            }
+        } finally {
+            source.close();
+            if (sink != null) {
+                sink.close();
+            } else {
+                outputStream.close();
+            }
+        }
+        return file;
+    }
+
+    private static void preallocate(FileDescriptor fd, long length) {
+        try {
+            Os.posix_fallocate(fd, 0, length);
+        } catch (ErrnoException e) {
+            // Preallocation is only an optimization, not all file systems support it
+        }
+    }
+
+    /** Flushes a file that has already been written to disk */
+    public static void syncFile(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            inputStream.getFD().sync();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /** Flushes the entries of a directory (e.g. after creating or renaming files) to disk */
+    public static void syncDirectory(File directory) throws IOException {
+        try {
+            FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("Could not sync directory: " + directory, e);
+        }
+    }
+
     public static void writeToFile(byte[] bytes, File file) throws IOException {
         BufferedSink sink = null;
         try {
@@ -52,9 +128,97 @@ class IOUtils {
         }
     }
 
+    /**
+     * Wraps an input stream so that everything read from it is also written
+     * to the output stream. Closing the wrapper closes both streams.
+     */
+    public static InputStream teeInputStream(InputStream inputStream, final OutputStream outputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    outputStream.write(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0) {
+                    outputStream.write(buffer, offset, count);
+                }
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // Read instead of skipping, so the skipped bytes end up in the output too
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                int count = read(buffer, 0, buffer.length);
+                return Math.max(count, 0);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    outputStream.close();
+                }
+            }
+        };
+    }
+
+    /** Reads an input stream to the end, discarding its contents */
+    public static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (inputStream.read(buffer) != -1) {
+            // Keep reading
+        }
+    }
+
+    public static void copyFile(File source, File target) throws IOException {
+        FileInputStream fis = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        try {
+            FileChannel sourceChannel = fis.getChannel();
+            FileChannel targetChannel = fos.getChannel();
+            targetChannel.transferFrom(sourceChannel, 0, sourceChannel.size());
+        } finally {
+            fis.close();
+            fos.close();
+        }
+    }
+
+    /**
+     * Creates a hard link to the source file, falling back to a copy when
+     * hard links are unavailable or fail (e.g. across file systems)
+     */
+    public static void linkOrCopyFile(File source, File target) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Could not delete existing file: " + target);
+        }
+
+        try {
+            Os.link(source.getPath(), target.getPath());
+            return;
+        } catch (ErrnoException e) {
+            // Fall back to copying below
+        }
+        copyFile(source, target);
+    }
+
     public static boolean deleteRecursively(File file) {
-        if (file.isDirectory()) {
-            for (File child : file.listFiles()) {
+        File[] children = file.isDirectory() ? file.listFiles() : null;
+        if (children != null) {
+            for (File child : children) {
                 if (!deleteRecursively(child)) {
                     return false;
                 }
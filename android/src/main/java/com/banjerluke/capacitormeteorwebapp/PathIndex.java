@@ -0,0 +1,216 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compact, read-only set of paths, each with an associated long value.
+ *
+ * All paths are stored as sorted UTF-8 bytes in a single array, with an array
+ * of offsets into it. Compared to a HashSet of Strings this takes a fraction
+ * of the heap and only a handful of objects, so there is little for the
+ * garbage collector to trace. Lookups are binary searches.
+ */
+final class PathIndex {
+    private final byte[] bytes;
+    /** Start of every path in {@link #bytes}, followed by the end of the last one */
+    private final int[] offsets;
+    private final long[] values;
+
+    private PathIndex(byte[] bytes, int[] offsets, long[] values) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    /** @return the index of the path, or -1 if it is not in the set */
+    int indexOf(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(key, 0, key.length);
+        if (index < size() && compareAt(index, key, 0, key.length, false) == 0) {
+            return index;
+        }
+        return -1;
+    }
+
+    /** @return the index of the path at an index of another set, or -1; the bytes are compared as they are */
+    int indexOf(PathIndex other, int otherIndex) {
+        int start = other.offsets[otherIndex];
+        int length = other.offsets[otherIndex + 1] - start;
+        int index = lowerBound(other.bytes, start, length);
+        if (index < size() && compareAt(index, other.bytes, start, length, false) == 0) {
+            return index;
+        }
+        return -1;
+    }
+
+    boolean contains(String path) {
+        return indexOf(path) >= 0;
+    }
+
+    /** @return true if any path in the set starts with the prefix */
+    boolean containsPrefix(String prefix) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(key, 0, key.length);
+        return index < size() && compareAt(index, key, 0, key.length, true) == 0;
+    }
+
+    String pathAt(int index) {
+        return new String(bytes, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+    }
+
+    /** @return the path at an index without its first skip bytes, which must end on a character boundary */
+    String pathAt(int index, int skip) {
+        int start = offsets[index] + skip;
+        return new String(bytes, start, offsets[index + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    int pathLengthAt(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /** @return true if the path at an index equals the ASCII string, without decoding the path */
+    boolean pathEqualsAt(int index, String asciiPath) {
+        return pathLengthAt(index) == asciiPath.length() && regionMatchesAt(index, 0, asciiPath);
+    }
+
+    /** @return true if the path at an index starts with the ASCII string, without decoding the path */
+    boolean pathStartsWithAt(int index, String asciiPrefix) {
+        return pathLengthAt(index) >= asciiPrefix.length() && regionMatchesAt(index, 0, asciiPrefix);
+    }
+
+    /** @return true if the path at an index ends with the ASCII string, without decoding the path */
+    boolean pathEndsWithAt(int index, String asciiSuffix) {
+        int offset = pathLengthAt(index) - asciiSuffix.length();
+        return offset >= 0 && regionMatchesAt(index, offset, asciiSuffix);
+    }
+
+    /** Appends the path at an index, decoding it directly into the builder when it is ASCII */
+    void appendPathAt(int index, StringBuilder builder) {
+        int start = offsets[index];
+        int end = offsets[index + 1];
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                builder.append(new String(bytes, i, end - i, StandardCharsets.UTF_8));
+                return;
+            }
+            builder.append((char) bytes[i]);
+        }
+    }
+
+    /** Non-ASCII characters never match, as they are encoded as several bytes */
+    private boolean regionMatchesAt(int index, int offset, String ascii) {
+        int start = offsets[index] + offset;
+        for (int i = 0; i < ascii.length(); i++) {
+            char c = ascii.charAt(i);
+            if (c >= 0x80 || bytes[start + i] != (byte) c) return false;
+        }
+        return true;
+    }
+
+    long valueAt(int index) {
+        return values[index];
+    }
+
+    /** @return the index of the first path that is not less than the key */
+    private int lowerBound(byte[] key, int keyStart, int keyLength) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareAt(middle, key, keyStart, keyLength, false) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the path at an index with a key, byte by byte as unsigned values
+     * @param prefixOnly if true, a path that starts with the key compares equal
+     */
+    private int compareAt(int index, byte[] key, int keyStart, int keyLength, boolean prefixOnly) {
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        int commonLength = Math.min(length, keyLength);
+        for (int i = 0; i < commonLength; i++) {
+            int difference = (bytes[start + i] & 0xff) - (key[keyStart + i] & 0xff);
+            if (difference != 0) return difference;
+        }
+        if (prefixOnly && length >= keyLength) return 0;
+        return length - keyLength;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int commonLength = Math.min(a.length, b.length);
+        for (int i = 0; i < commonLength; i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if (difference != 0) return difference;
+        }
+        return a.length - b.length;
+    }
+
+    static final class Builder {
+        private static final class Entry {
+            final byte[] path;
+            final long value;
+
+            Entry(byte[] path, long value) {
+                this.path = path;
+                this.value = value;
+            }
+        }
+
+        private final List<Entry> entries = new ArrayList<Entry>();
+
+        Builder add(String path, long value) {
+            entries.add(new Entry(path.getBytes(StandardCharsets.UTF_8), value));
+            return this;
+        }
+
+        /** Builds the index. If a path was added more than once, the first value wins. */
+        PathIndex build() {
+            // A stable sort keeps the first of any duplicates in front
+            Collections.sort(entries, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return compareBytes(a.path, b.path);
+                }
+            });
+
+            List<Entry> uniqueEntries = new ArrayList<Entry>(entries.size());
+            int totalLength = 0;
+            for (Entry entry : entries) {
+                if (!uniqueEntries.isEmpty() && compareBytes(uniqueEntries.get(uniqueEntries.size() - 1).path, entry.path) == 0) {
+                    continue;
+                }
+                uniqueEntries.add(entry);
+                totalLength += entry.path.length;
+            }
+
+            byte[] bytes = new byte[totalLength];
+            int[] offsets = new int[uniqueEntries.size() + 1];
+            long[] values = new long[uniqueEntries.size()];
+            int offset = 0;
+            for (int i = 0; i < uniqueEntries.size(); i++) {
+                Entry entry = uniqueEntries.get(i);
+                offsets[i] = offset;
+                System.arraycopy(entry.path, 0, bytes, offset, entry.path.length);
+                offset += entry.path.length;
+                values[i] = entry.value;
+            }
+            offsets[uniqueEntries.size()] = offset;
+
+            return new PathIndex(bytes, offsets, values);
+        }
+    }
+}
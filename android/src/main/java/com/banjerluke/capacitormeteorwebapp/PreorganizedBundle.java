@@ -0,0 +1,115 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The initial bundle as organized at build time by meteor-assets.gradle, so it
+ * can be served straight from the APK without organizing it on the device.
+ *
+ * The build writes an index.html with the shim already injected, and a route
+ * table mapping every URL path of the bundle to its asset path and content
+ * type. The table is UTF-8 text: header lines of the form "@key&lt;TAB&gt;value",
+ * followed by one "urlPath&lt;TAB&gt;assetPath&lt;TAB&gt;contentType" line per route.
+ * The content type may be empty.
+ *
+ * The table is only used when it was built for the version of the initial
+ * bundle and with the shim this plugin injects, so a stale build output
+ * falls back to organizing the bundle at runtime.
+ */
+final class PreorganizedBundle {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    /** Asset directory the build writes to, see meteor-assets.gradle */
+    static final String DIRECTORY_NAME = "meteor-preorganized";
+    static final String ROUTES_FILE_NAME = DIRECTORY_NAME + "/routes.idx";
+
+    private final PathIndex routes;
+    private final String[] assetPaths;
+    private final String[] contentTypes;
+
+    private PreorganizedBundle(PathIndex routes, String[] assetPaths, String[] contentTypes) {
+        this.routes = routes;
+        this.assetPaths = assetPaths;
+        this.contentTypes = contentTypes;
+    }
+
+    /**
+     * @return the route table of the version, or null if the build did not
+     * produce one for that version and the current shim
+     */
+    static PreorganizedBundle load(AssetManager assetManager, String version, String shimDigest) {
+        InputStream inputStream;
+        try {
+            inputStream = assetManager.open(ROUTES_FILE_NAME);
+        } catch (FileNotFoundException e) {
+            Log.d(LOG_TAG, "No pre-organized initial bundle found");
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not open pre-organized initial bundle", e);
+            return null;
+        }
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 64 * 1024);
+            String builtVersion = null;
+            String builtShimDigest = null;
+            PathIndex.Builder builder = new PathIndex.Builder();
+            List<String> assetPaths = new ArrayList<String>();
+            List<String> contentTypes = new ArrayList<String>();
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (line.startsWith("@")) {
+                    if (fields.length < 2) continue;
+                    if (fields[0].equals("@version")) builtVersion = fields[1];
+                    if (fields[0].equals("@shim")) builtShimDigest = fields[1];
+                    continue;
+                }
+                if (fields.length < 3) continue;
+
+                builder.add(fields[0], assetPaths.size());
+                assetPaths.add(fields[1]);
+                contentTypes.add(fields[2].isEmpty() ? null : fields[2]);
+            }
+
+            if (!version.equals(builtVersion) || !shimDigest.equals(builtShimDigest)) {
+                Log.i(LOG_TAG, "Pre-organized initial bundle is out of date, organizing at runtime");
+                return null;
+            }
+
+            Log.i(LOG_TAG, "Using pre-organized initial bundle with " + assetPaths.size() + " routes");
+            return new PreorganizedBundle(builder.build(), assetPaths.toArray(new String[0]), contentTypes.toArray(new String[0]));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read pre-organized initial bundle", e);
+            return null;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /** @return the asset path serving the URL path, or null if there is no such route */
+    String assetPathForUrlPath(String urlPath) {
+        int index = routes.indexOf(urlPath);
+        return index >= 0 ? assetPaths[(int) routes.valueAt(index)] : null;
+    }
+
+    /** @return the content type of the URL path, or null if the route has none or there is no such route */
+    String contentTypeForUrlPath(String urlPath) {
+        int index = routes.indexOf(urlPath);
+        return index >= 0 ? contentTypes[(int) routes.valueAt(index)] : null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tees one response body to a fixed number of readers through a bounded
+ * ring buffer, so several requests can share one upstream fetch.
+ *
+ * Whichever reader runs out of buffered bytes reads the next chunk from the
+ * source, so no extra thread is needed. The fastest reader can get at most
+ * the buffer's capacity ahead of the slowest one. If the slowest reader makes
+ * no progress for the stall timeout while the buffer is full, it is dropped
+ * and gets an IOException, so an abandoned reader cannot hold up the others.
+ * The source is closed when it is exhausted or all readers are closed.
+ */
+final class SharedBody {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    private final InputStream source;
+    private final byte[] buffer;
+    private final long stallTimeoutMs;
+    private final List<Reader> readers = new ArrayList<Reader>();
+
+    /** Offset in the body of the oldest byte still needed by a reader */
+    private long start;
+    /** Offset in the body of the byte after the last one read from the source */
+    private long end;
+    /** True while a reader reads from the source, outside the lock */
+    private boolean filling;
+    private boolean exhausted;
+    private IOException failure;
+    private boolean sourceClosed;
+
+    SharedBody(InputStream source, int capacity, int readerCount, long stallTimeoutMs) {
+        this.source = source;
+        this.buffer = new byte[capacity];
+        this.stallTimeoutMs = stallTimeoutMs;
+        for (int i = 0; i < readerCount; i++) {
+            readers.add(new Reader());
+        }
+    }
+
+    /** @return the readers, each of which must be read to the end or closed */
+    List<InputStream> getReaders() {
+        return new ArrayList<InputStream>(readers);
+    }
+
+    private int read(Reader reader, byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+
+        while (true) {
+            int fillIndex;
+            int fillLength;
+
+            synchronized (this) {
+                long stallDeadline = 0;
+                while (true) {
+                    if (reader.closed) throw new IOException("Stream closed");
+                    if (reader.dropped) throw new IOException("Fell too far behind the other readers of a shared response");
+
+                    if (reader.position < end) {
+                        int count = copy(reader.position, bytes, offset, length);
+                        reader.position += count;
+                        advanceStart();
+                        return count;
+                    }
+                    if (failure != null) throw new IOException("Shared response failed", failure);
+                    if (exhausted) return -1;
+
+                    if (filling) {
+                        await(0);
+                        continue;
+                    }
+
+                    if (end - start >= buffer.length) {
+                        long now = System.currentTimeMillis();
+                        if (stallDeadline == 0) {
+                            stallDeadline = now + stallTimeoutMs;
+                        } else if (now >= stallDeadline) {
+                            dropSlowestReaders();
+                            stallDeadline = 0;
+                            continue;
+                        }
+                        await(stallDeadline - now);
+                        continue;
+                    }
+
+                    // Fill the free space up to the end of the ring, the rest on the next round
+                    fillIndex = (int) (end % buffer.length);
+                    fillLength = (int) Math.min(buffer.length - (end - start), buffer.length - fillIndex);
+                    filling = true;
+                    break;
+                }
+            }
+
+            // The bytes being overwritten lie before start, so no reader needs them anymore
+            int count = -1;
+            IOException readFailure = null;
+            try {
+                count = source.read(buffer, fillIndex, fillLength);
+            } catch (IOException e) {
+                readFailure = e;
+            }
+
+            synchronized (this) {
+                filling = false;
+                if (readFailure != null) {
+                    failure = readFailure;
+                } else if (count < 0) {
+                    exhausted = true;
+                } else {
+                    end += count;
+                }
+                if (failure != null || exhausted) {
+                    closeSource();
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void await(long timeoutMs) throws InterruptedIOException {
+        try {
+            wait(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared response");
+        }
+    }
+
+    /** Copies bytes from the ring buffer, only up to its end so a copy is contiguous */
+    private int copy(long position, byte[] bytes, int offset, int length) {
+        int index = (int) (position % buffer.length);
+        int count = (int) Math.min(Math.min(length, end - position), buffer.length - index);
+        System.arraycopy(buffer, index, bytes, offset, count);
+        return count;
+    }
+
+    /** Frees the bytes every open reader is done with, and wakes up readers waiting for space */
+    private void advanceStart() {
+        long minPosition = end;
+        boolean anyOpen = false;
+        for (Reader reader : readers) {
+            if (reader.closed || reader.dropped) continue;
+            anyOpen = true;
+            minPosition = Math.min(minPosition, reader.position);
+        }
+
+        if (!anyOpen) {
+            closeSource();
+        }
+        if (minPosition > start) {
+            start = minPosition;
+            notifyAll();
+        }
+    }
+
+    private void dropSlowestReaders() {
+        for (Reader reader : readers) {
+            if (!reader.closed && !reader.dropped && reader.position == start) {
+                Log.w(LOG_TAG, "Dropping stalled reader of a shared response");
+                reader.dropped = true;
+            }
+        }
+        advanceStart();
+        notifyAll();
+    }
+
+    private void closeSource() {
+        if (sourceClosed) return;
+        sourceClosed = true;
+        try {
+            source.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private final class Reader extends InputStream {
+        private long position;
+        private boolean closed;
+        private boolean dropped;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return SharedBody.this.read(this, bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            synchronized (SharedBody.this) {
+                if (closed) return;
+                closed = true;
+                advanceStart();
+                SharedBody.this.notifyAll();
+            }
+        }
+    }
+}
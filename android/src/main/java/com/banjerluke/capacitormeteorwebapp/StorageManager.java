@@ -0,0 +1,446 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.os.Process;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the disk space used by downloaded versions, their serving directories
+ * and partial downloads within a quota.
+ *
+ * Maintenance runs on a single low priority thread, a while after it is
+ * requested, so it does not compete with startup or downloads. It first
+ * removes orphans: serving directories of versions that no longer exist or
+ * were never organized completely with the current shim, blacklisted
+ * versions and stray temporary files. If the remaining files exceed the quota, it evicts the partial
+ * download and then the least recently used versions until they fit. The
+ * versions returned by {@link Callback#getProtectedVersions} are never removed.
+ *
+ * Versions, the asset store and serving directories share files through hard
+ * links, so usage is measured by inode: a file with several links only counts
+ * once towards the total.
+ */
+class StorageManager {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    /** Touched in a version directory when the version is downloaded or served */
+    static final String LAST_USE_MARKER_FILE_NAME = ".lastUse";
+
+    /** Temporary files younger than this may still be in use */
+    private static final long TEMPORARY_FILE_MAX_AGE_MS = TimeUnit.HOURS.toMillis(1);
+
+    /** How long to wait before trying again when maintenance finds a download in progress */
+    private static final long DOWNLOAD_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    public interface Callback {
+        /** @return the versions that must be kept, e.g. the current and pending ones */
+        Set<String> getProtectedVersions();
+
+        /** @return the versions that will not be switched to again */
+        Set<String> getBlacklistedVersions();
+    }
+
+    /**
+     * Bytes on disk, in total and by owner. Every inode also remembers which
+     * versions and partial download link it, so removing one can be accounted
+     * for without measuring again. The asset store is left out of this, since
+     * its entries go away with the last version that retains them.
+     */
+    static final class Usage {
+        static final String PARTIAL_DOWNLOAD = "partial";
+        static final String ASSET_STORE = "store";
+
+        private final Map<String, Long> bytesByOwner = new LinkedHashMap<String, Long>();
+        private long totalBytes;
+
+        private final Map<Long, Inode> inodes = new HashMap<Long, Inode>();
+        private final Map<String, List<Inode>> inodesByRemovable = new HashMap<String, List<Inode>>();
+
+        private static final class Inode {
+            final long size;
+            final List<String> removables = new ArrayList<String>(2);
+
+            Inode(long size) {
+                this.size = size;
+            }
+        }
+
+        static String versionOwner(String version) {
+            return "version:" + version;
+        }
+
+        static String servingOwner(String version) {
+            return "serving:" + version;
+        }
+
+        long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /** @return the bytes held by an owner, counting files it shares with others */
+        long getBytes(String owner) {
+            Long bytes = bytesByOwner.get(owner);
+            return bytes != null ? bytes : 0;
+        }
+
+        /**
+         * Accounts for the removal of a version and its serving directory
+         * @return the bytes freed
+         */
+        long removeVersion(String version) {
+            bytesByOwner.remove(servingOwner(version));
+            return remove(versionOwner(version));
+        }
+
+        /**
+         * Accounts for the removal of the partial download
+         * @return the bytes freed, i.e. of files no remaining version or partial download links
+         */
+        long remove(String removable) {
+            bytesByOwner.remove(removable);
+
+            List<Inode> removableInodes = inodesByRemovable.remove(removable);
+            if (removableInodes == null) return 0;
+
+            long freedBytes = 0;
+            for (Inode inode : removableInodes) {
+                inode.removables.remove(removable);
+                if (inode.removables.isEmpty()) {
+                    freedBytes += inode.size;
+                }
+            }
+            totalBytes -= freedBytes;
+            return freedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return totalBytes + " bytes " + bytesByOwner;
+        }
+    }
+
+    private final AssetBundleManager assetBundleManager;
+    private final Trash trash;
+    private final File versionsDirectory;
+    private final File servingDirectory;
+    private final long quotaBytes;
+    private final Callback callback;
+
+    private final ScheduledExecutorService executor;
+    private boolean maintenanceScheduled;
+
+    public StorageManager(AssetBundleManager assetBundleManager, Trash trash, File versionsDirectory, File servingDirectory, long quotaBytes, Callback callback) {
+        this.assetBundleManager = assetBundleManager;
+        this.trash = trash;
+        this.versionsDirectory = versionsDirectory;
+        this.servingDirectory = servingDirectory;
+        this.quotaBytes = quotaBytes;
+        this.callback = callback;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "MeteorWebApp-Storage");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Schedules maintenance to run after a delay. Requests made while one is
+     * already scheduled are folded into it.
+     */
+    public synchronized void scheduleMaintenance(long delayMs) {
+        if (maintenanceScheduled) return;
+        maintenanceScheduled = true;
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (StorageManager.this) {
+                    maintenanceScheduled = false;
+                }
+                try {
+                    runMaintenance();
+                } catch (RuntimeException e) {
+                    Log.w(LOG_TAG, "Storage maintenance failed", e);
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Records that a version is being served, for least recently used eviction */
+    public void markUsed(String version) {
+        File versionDirectory = assetBundleManager.getDownloadedVersionDirectory(version);
+        if (versionDirectory != null) {
+            recordUse(versionDirectory);
+        }
+    }
+
+    /** Touches the last use marker of a version directory, creating it if necessary */
+    static void recordUse(File versionDirectory) {
+        File marker = new File(versionDirectory, LAST_USE_MARKER_FILE_NAME);
+        try {
+            if (!marker.createNewFile() && !marker.setLastModified(System.currentTimeMillis())) {
+                Log.w(LOG_TAG, "Could not record use of " + versionDirectory);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not record use of " + versionDirectory, e);
+        }
+    }
+
+    private void runMaintenance() {
+        // Downloads link assets from other versions, so leave them alone until it is done
+        if (assetBundleManager.isDownloading()) {
+            scheduleMaintenance(DOWNLOAD_RETRY_DELAY_MS);
+            return;
+        }
+
+        Set<String> protectedVersions = callback.getProtectedVersions();
+
+        removeOrphans(protectedVersions);
+
+        Usage usage = measureUsage();
+        Log.i(LOG_TAG, "Storage usage: " + usage);
+        if (usage.getTotalBytes() <= quotaBytes) return;
+
+        // A partial download only saves downloading a few assets again, so it goes first
+        if (usage.getBytes(Usage.PARTIAL_DOWNLOAD) > 0 && assetBundleManager.removePartialDownload()) {
+            Log.i(LOG_TAG, "Over storage quota, removed partial download");
+            usage.remove(Usage.PARTIAL_DOWNLOAD);
+        }
+
+        for (String version : evictableVersionsByLastUse(protectedVersions)) {
+            if (usage.getTotalBytes() <= quotaBytes) break;
+
+            Log.i(LOG_TAG, "Over storage quota, removing version " + version);
+            removeVersion(version);
+            usage.removeVersion(version);
+        }
+
+        if (usage.getTotalBytes() > quotaBytes) {
+            Log.w(LOG_TAG, "Storage usage of " + usage.getTotalBytes() + " bytes exceeds the quota of "
+                    + quotaBytes + " bytes, but only protected versions are left");
+        }
+    }
+
+    //region Orphans
+
+    private void removeOrphans(Set<String> protectedVersions) {
+        Set<String> downloadedVersions = assetBundleManager.getDownloadedVersions();
+
+        for (String version : callback.getBlacklistedVersions()) {
+            if (protectedVersions.contains(version)) continue;
+            if (downloadedVersions.remove(version) || new File(servingDirectory, version).exists()) {
+                Log.i(LOG_TAG, "Removing blacklisted version " + version);
+                removeVersion(version);
+            }
+        }
+
+        File[] servingDirectories = servingDirectory.listFiles();
+        if (servingDirectories != null) {
+            for (File directory : servingDirectories) {
+                String version = directory.getName();
+                if (protectedVersions.contains(version)) continue;
+
+                if (!downloadedVersions.contains(version)) {
+                    Log.i(LOG_TAG, "Removing serving directory of missing version " + version);
+                    moveToTrash(directory);
+                } else if (!BundleOrganizer.isOrganized(directory)) {
+                    Log.i(LOG_TAG, "Removing incomplete or outdated serving directory of version " + version);
+                    moveToTrash(directory);
+                }
+            }
+        }
+
+        // Left behind by manifest downloads and writes that were interrupted
+        removeTemporaryFiles(versionsDirectory);
+        for (String version : downloadedVersions) {
+            File versionDirectory = assetBundleManager.getDownloadedVersionDirectory(version);
+            if (versionDirectory != null) {
+                removeTemporaryFiles(versionDirectory);
+            }
+        }
+
+        assetBundleManager.removeUnreferencedStoredAssets();
+    }
+
+    private static void removeTemporaryFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        long cutoff = System.currentTimeMillis() - TEMPORARY_FILE_MAX_AGE_MS;
+        for (File file : files) {
+            if (!isTemporaryFile(file.getName()) || !file.isFile() || file.lastModified() > cutoff) continue;
+
+            Log.d(LOG_TAG, "Removing temporary file " + file);
+            if (!file.delete()) {
+                Log.w(LOG_TAG, "Could not delete temporary file " + file);
+            }
+        }
+    }
+
+    /** @return true for the names File.createTempFile gives manifests, and the ".name.tmp" files used for atomic writes */
+    private static boolean isTemporaryFile(String name) {
+        return (name.startsWith(".manifest") && name.endsWith(".json")) || (name.startsWith(".") && name.endsWith(".tmp"));
+    }
+
+    //endregion
+
+    //region Eviction
+
+    /** @return the versions that may be removed, least recently used first */
+    private List<String> evictableVersionsByLastUse(Set<String> protectedVersions) {
+        Set<String> versions = assetBundleManager.getDownloadedVersions();
+        versions.removeAll(protectedVersions);
+
+        final Map<String, Long> lastUses = new LinkedHashMap<String, Long>();
+        for (String version : versions) {
+            lastUses.put(version, lastUse(version));
+        }
+
+        List<String> sortedVersions = new ArrayList<String>(versions);
+        Collections.sort(sortedVersions, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(lastUses.get(a), lastUses.get(b));
+            }
+        });
+        return sortedVersions;
+    }
+
+    /**
+     * @return when a version was last downloaded or served, going by its marker,
+     * or by its manifest for versions downloaded before markers were recorded
+     */
+    private long lastUse(String version) {
+        File versionDirectory = assetBundleManager.getDownloadedVersionDirectory(version);
+        if (versionDirectory == null) return 0;
+
+        long lastUse = new File(versionDirectory, LAST_USE_MARKER_FILE_NAME).lastModified();
+        if (lastUse == 0) {
+            lastUse = new File(versionDirectory, "program.json").lastModified();
+        }
+        return lastUse;
+    }
+
+    private void removeVersion(String version) {
+        assetBundleManager.removeDownloadedAssetBundle(version);
+        moveToTrash(new File(servingDirectory, version));
+    }
+
+    //endregion
+
+    //region Usage
+
+    /** Measures the bytes held by every version, serving directory and the partial download */
+    Usage measureUsage() {
+        Usage usage = new Usage();
+        Set<Long> countedInodes = new HashSet<Long>();
+
+        for (String version : assetBundleManager.getDownloadedVersions()) {
+            File versionDirectory = assetBundleManager.getDownloadedVersionDirectory(version);
+            if (versionDirectory != null) {
+                measure(usage, Usage.versionOwner(version), Usage.versionOwner(version), versionDirectory, countedInodes);
+            }
+        }
+
+        File[] servingDirectories = servingDirectory.listFiles();
+        if (servingDirectories != null) {
+            for (File directory : servingDirectories) {
+                measure(usage, Usage.servingOwner(directory.getName()), Usage.versionOwner(directory.getName()), directory, countedInodes);
+            }
+        }
+
+        measure(usage, Usage.PARTIAL_DOWNLOAD, Usage.PARTIAL_DOWNLOAD, assetBundleManager.getPartialDownloadDirectory(), countedInodes);
+        measure(usage, Usage.ASSET_STORE, null, assetBundleManager.getAssetStoreDirectory(), countedInodes);
+        return usage;
+    }
+
+    /** @param removable the owner whose removal also removes this directory, or null if it is never removed */
+    private static void measure(Usage usage, String owner, String removable, File directory, Set<Long> countedInodes) {
+        if (!directory.isDirectory()) return;
+
+        long[] bytes = new long[1];
+        measureDirectory(usage, removable, directory, new HashSet<Long>(), countedInodes, bytes);
+        if (bytes[0] > 0) {
+            usage.bytesByOwner.put(owner, bytes[0]);
+        }
+    }
+
+    private static void measureDirectory(Usage usage, String removable, File directory, Set<Long> ownerInodes, Set<Long> countedInodes, long[] bytes) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                measureDirectory(usage, removable, file, ownerInodes, countedInodes, bytes);
+                continue;
+            }
+
+            try {
+                StructStat stat = Os.lstat(file.getPath());
+                if (ownerInodes.add(stat.st_ino)) {
+                    bytes[0] += stat.st_size;
+                }
+                if (countedInodes.add(stat.st_ino)) {
+                    usage.totalBytes += stat.st_size;
+                }
+                if (removable != null) {
+                    addRemovable(usage, removable, stat);
+                }
+            } catch (ErrnoException e) {
+                // Removed while we were measuring
+            }
+        }
+    }
+
+    private static void addRemovable(Usage usage, String removable, StructStat stat) {
+        Usage.Inode inode = usage.inodes.get(stat.st_ino);
+        if (inode == null) {
+            inode = new Usage.Inode(stat.st_size);
+            usage.inodes.put(stat.st_ino, inode);
+        }
+        if (inode.removables.contains(removable)) return;
+
+        inode.removables.add(removable);
+        List<Usage.Inode> removableInodes = usage.inodesByRemovable.get(removable);
+        if (removableInodes == null) {
+            removableInodes = new ArrayList<Usage.Inode>();
+            usage.inodesByRemovable.put(removable, removableInodes);
+        }
+        removableInodes.add(inode);
+    }
+
+    //endregion
+
+    private void moveToTrash(File file) {
+        if (!trash.moveToTrash(file)) {
+            Log.w(LOG_TAG, "Could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.banjerluke.capacitormeteorwebapp;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes directories without waiting for their contents to be deleted.
+ *
+ * A directory is renamed into the trash directory, which is a single atomic
+ * rename on the same file system, and a low priority background thread
+ * deletes it from there. Whatever is left in the trash when the process dies
+ * is deleted the next time the trash is created.
+ */
+final class Trash {
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    private final File directory;
+    private final ExecutorService executor;
+
+    /** Makes the names of trashed files unique, also across restarts */
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    public Trash(File directory) {
+        this.directory = directory;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                        runnable.run();
+                    }
+                }, "MeteorWebApp-Trash");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create trash directory: " + directory);
+        }
+
+        // Resume deleting what an earlier process left behind
+        String[] names = directory.list();
+        if (names != null && names.length > 0) {
+            scheduleEmptying();
+        }
+    }
+
+    /**
+     * Moves a file or directory into the trash, to be deleted in the background.
+     * If it cannot be moved, it is deleted right away instead.
+     * @return true if the file no longer exists at its original location
+     */
+    public boolean moveToTrash(File file) {
+        if (!file.exists()) return true;
+
+        File trashedFile = new File(directory, file.getName() + "." + sequence.incrementAndGet());
+        if (file.renameTo(trashedFile)) {
+            scheduleEmptying();
+            return true;
+        }
+
+        Log.w(LOG_TAG, "Could not move " + file + " to the trash, deleting it in place");
+        return IOUtils.deleteRecursively(file);
+    }
+
+    private void scheduleEmptying() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                empty();
+            }
+        });
+    }
+
+    private void empty() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (!IOUtils.deleteRecursively(file)) {
+                Log.w(LOG_TAG, "Could not delete " + file + " from the trash");
+            }
+        }
+    }
+}
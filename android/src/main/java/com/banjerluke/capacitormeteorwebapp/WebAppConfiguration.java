@@ -4,89 +4,274 @@ import android.content.SharedPreferences;
 import android.util.Log;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * The configuration is kept in memory, so reads never touch the disk and
+ * writes never block the calling thread. Changes are made in transactions
+ * (see {@link #edit}) and written to SharedPreferences in the background, one
+ * commit per transaction. Call {@link #flush} where the configuration must be
+ * on disk before continuing, e.g. before switching versions.
+ */
 class WebAppConfiguration {
-    private SharedPreferences preferences;
+    private static final String LOG_TAG = "MeteorWebApp";
+
+    private final SharedPreferences preferences;
+
+    /** Current values by key, either Strings or Sets of Strings (or other types left by older versions) */
+    private final Map<String, Object> values;
+
+    /** Incremented by every transaction, so the persister can skip writes a later one supersedes */
+    private long generation;
+    private long persistedGeneration;
+
+    private final ExecutorService persister;
 
     public WebAppConfiguration(SharedPreferences preferences) {
         this.preferences = preferences;
+        this.values = new HashMap<String, Object>(preferences.getAll());
+        this.persister = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MeteorWebApp-Config");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** A set of changes that is applied to the configuration at once */
+    final class Editor {
+        private final Map<String, Object> changes = new HashMap<String, Object>();
+        private boolean clear;
+
+        private Editor() {
+        }
+
+        private Editor put(String key, Object value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        public Editor setAppId(String appId) {
+            return put("appId", appId);
+        }
+
+        public Editor setRootUrlString(String rootUrlString) {
+            return put("rootUrl", rootUrlString);
+        }
+
+        public Editor setCordovaCompatibilityVersion(String version) {
+            return put("cordovaCompatibilityVersion", version);
+        }
+
+        public Editor setLastDownloadedVersion(String version) {
+            return put("lastDownloadedVersion", version);
+        }
+
+        public Editor setLastSeenInitialVersion(String version) {
+            return put("lastSeenInitialVersion", version);
+        }
+
+        public Editor setInitialBundlePath(String path) {
+            return put("initialBundlePath", path);
+        }
+
+        public Editor setLastKnownGoodVersion(String version) {
+            return put("lastKnownGoodVersion", version);
+        }
+
+        /** Removes all values, before the other changes in this transaction are applied */
+        public Editor reset() {
+            clear = true;
+            changes.clear();
+            return this;
+        }
+
+        /** Applies the changes in memory, and schedules writing them to disk */
+        public void apply() {
+            WebAppConfiguration.this.apply(this);
+        }
+    }
+
+    public Editor edit() {
+        return new Editor();
+    }
+
+    private synchronized void apply(Editor editor) {
+        if (editor.clear) {
+            values.clear();
+        }
+        for (Map.Entry<String, Object> change : editor.changes.entrySet()) {
+            if (change.getValue() == null) {
+                values.remove(change.getKey());
+            } else {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+        generation++;
+
+        persister.execute(new Runnable() {
+            @Override
+            public void run() {
+                persist();
+            }
+        });
+    }
+
+    /** Writes the current values with a single commit, unless they have been written already */
+    private void persist() {
+        Map<String, Object> snapshot;
+        long snapshotGeneration;
+        synchronized (this) {
+            if (persistedGeneration >= generation) return;
+            snapshot = new HashMap<String, Object>(values);
+            snapshotGeneration = generation;
+        }
+
+        SharedPreferences.Editor editor = preferences.edit().clear();
+        for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+            putValue(editor, entry.getKey(), entry.getValue());
+        }
+        if (!editor.commit()) {
+            Log.w(LOG_TAG, "Could not write configuration");
+            return;
+        }
+
+        synchronized (this) {
+            persistedGeneration = Math.max(persistedGeneration, snapshotGeneration);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putValue(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Set) {
+            editor.putStringSet(key, new HashSet<String>((Set<String>) value));
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        }
+    }
+
+    /** Blocks until all changes applied so far have been written to disk */
+    public void flush() {
+        try {
+            persister.submit(new Runnable() {
+                @Override
+                public void run() {
+                    persist();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(LOG_TAG, "Could not write configuration", e);
+        }
+    }
+
+    private synchronized String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Set<String> getStringSet(String key) {
+        Object value = values.get(key);
+        return value instanceof Set ? (Set<String>) value : Collections.<String>emptySet();
     }
 
     public String getAppId() {
-        return preferences.getString("appId", null);
+        return getString("appId");
     }
 
     public void setAppId(String appId) {
-        preferences.edit().putString("appId", appId).commit();
+        edit().setAppId(appId).apply();
     }
 
     public String getRootUrlString() {
-        return preferences.getString("rootUrl", null);
+        return getString("rootUrl");
     }
 
     public void setRootUrlString(String rootUrlString) {
-        preferences.edit().putString("rootUrl", rootUrlString).commit();
+        edit().setRootUrlString(rootUrlString).apply();
     }
 
     public String getCordovaCompatibilityVersion() {
-        return preferences.getString("cordovaCompatibilityVersion", null);
+        return getString("cordovaCompatibilityVersion");
     }
 
     public void setCordovaCompatibilityVersion(String version) {
-        preferences.edit().putString("cordovaCompatibilityVersion", version).commit();
+        edit().setCordovaCompatibilityVersion(version).apply();
     }
 
     public String getLastDownloadedVersion() {
-        return preferences.getString("lastDownloadedVersion", null);
+        return getString("lastDownloadedVersion");
     }
 
     public void setLastDownloadedVersion(String version) {
-        preferences.edit().putString("lastDownloadedVersion", version).commit();
+        edit().setLastDownloadedVersion(version).apply();
     }
 
     public String getLastSeenInitialVersion() {
-        return preferences.getString("lastSeenInitialVersion", null);
+        return getString("lastSeenInitialVersion");
     }
 
     public void setLastSeenInitialVersion(String version) {
-        preferences.edit().putString("lastSeenInitialVersion", version).commit();
+        edit().setLastSeenInitialVersion(version).apply();
+    }
+
+    /** The asset path the initial bundle was found at, so startup does not have to probe for it */
+    public String getInitialBundlePath() {
+        return getString("initialBundlePath");
+    }
+
+    public void setInitialBundlePath(String path) {
+        edit().setInitialBundlePath(path).apply();
     }
 
     public String getLastKnownGoodVersion() {
-        return preferences.getString("lastKnownGoodVersion", null);
+        return getString("lastKnownGoodVersion");
     }
 
     public void setLastKnownGoodVersion(String version) {
-        preferences.edit().putString("lastKnownGoodVersion", version).commit();
+        edit().setLastKnownGoodVersion(version).apply();
     }
 
     public Set<String> getBlacklistedVersions() {
-        Set<String> blacklistedVersions = preferences.getStringSet("blacklistedVersions", Collections.EMPTY_SET);
-        Log.d("BLACKLIST", "getBlacklistedVersions: " + blacklistedVersions);
-        return blacklistedVersions;
+        return Collections.unmodifiableSet(getStringSet("blacklistedVersions"));
     }
 
-    public void addBlacklistedVersion(String version) {
-        Set<String> versionsForRetry = new HashSet<String>(preferences.getStringSet("versionsForRetry", Collections.EMPTY_SET));
-        Set<String> blacklistedVersions = new HashSet<String>(getBlacklistedVersions());
+    public synchronized void addBlacklistedVersion(String version) {
+        Set<String> versionsForRetry = new HashSet<String>(getStringSet("versionsForRetry"));
+        Set<String> blacklistedVersions = new HashSet<String>(getStringSet("blacklistedVersions"));
         Log.d("BLACKLIST", "versionsForRetry: " + versionsForRetry);
 
+        Editor editor = edit();
         if (!versionsForRetry.contains(version) && !blacklistedVersions.contains(version)) {
             Log.d("BLACKLIST", "adding faulty version for retry: " + version);
             versionsForRetry.add(version);
-            preferences.edit().putStringSet("versionsForRetry", versionsForRetry).commit();
+            editor.put("versionsForRetry", versionsForRetry);
         } else {
             versionsForRetry.remove(version);
             blacklistedVersions.add(version);
             Log.d("BLACKLIST", "blacklisting version: " + version);
-            preferences.edit().putStringSet("versionsForRetry", versionsForRetry).commit();
-            preferences.edit().putStringSet("blacklistedVersions", blacklistedVersions).commit();
+            editor.put("versionsForRetry", versionsForRetry);
+            editor.put("blacklistedVersions", blacklistedVersions);
         }
+        editor.apply();
     }
 
     public void reset() {
-        preferences.edit().clear().commit();
+        edit().reset().apply();
     }
 }
@@ -21,6 +21,11 @@ export interface CapacitorMeteorWebAppPlugin {
    */
   reload(): Promise<void>;
 
+  /**
+   * Get the status of the current or most recent download (Android only)
+   */
+  getDownloadStatus(): Promise<DownloadStatus>;
+
   /**
    * Listen for update available events
    */
@@ -37,6 +42,15 @@ export interface CapacitorMeteorWebAppPlugin {
     listenerFunc: (event: UpdateCompleteEvent) => void,
   ): Promise<PluginListenerHandle>;
 
+  /**
+   * Listen for download progress events, reported a few times per second
+   * while a new version is downloading (Android only)
+   */
+  addListener(
+    eventName: 'downloadProgress',
+    listenerFunc: (event: DownloadStatus) => void,
+  ): Promise<PluginListenerHandle>;
+
   /**
    * Remove all listeners
    */
@@ -52,6 +66,26 @@ export interface UpdateCompleteEvent {
   isReady: boolean;
 }
 
+export interface DownloadStatus {
+  state: 'idle' | 'downloading' | 'finished' | 'failed';
+  version?: string;
+  /** Number of assets downloaded from the network so far */
+  assetsDone?: number;
+  /** Number of assets that have to be downloaded from the network */
+  assetsTotal?: number;
+  bytesDone?: number;
+  bytesTotal?: number;
+  /** Number of assets reused from previously downloaded versions */
+  reusedAssets?: number;
+  reusedBytes?: number;
+  /** Smoothed download throughput in bytes per second, or -1 if unknown */
+  throughput?: number;
+  /** Estimated time remaining in milliseconds, or -1 if unknown */
+  eta?: number;
+  /** Time spent on the download so far in milliseconds */
+  elapsed?: number;
+}
+
 export enum MeteorWebAppError {
   DOWNLOAD_FAILED = 'DOWNLOAD_FAILED',
   VALIDATION_FAILED = 'VALIDATION_FAILED',
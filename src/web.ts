@@ -1,6 +1,6 @@
 import { WebPlugin } from '@capacitor/core';
 
-import type { CapacitorMeteorWebAppPlugin } from './definitions';
+import type { CapacitorMeteorWebAppPlugin, DownloadStatus } from './definitions';
 
 export class CapacitorMeteorWebAppWeb extends WebPlugin implements CapacitorMeteorWebAppPlugin {
   async startupDidComplete(): Promise<void> {
@@ -17,6 +17,11 @@ export class CapacitorMeteorWebAppWeb extends WebPlugin implements CapacitorMete
     return { available: false };
   }
 
+  async getDownloadStatus(): Promise<DownloadStatus> {
+    console.warn('CapacitorMeteorWebApp.getDownloadStatus() is not available on web platform');
+    return { state: 'idle' };
+  }
+
   async reload(): Promise<void> {
     console.warn('CapacitorMeteorWebApp.reload() is not available on web platform');
     window.location.reload();